@@ -0,0 +1,185 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes files atomically. The content is written to a temporary file in the same directory, which is renamed to
+ * the target, so an interrupted generation does not leave half-written files.
+ * <p>
+ * When it is durable, the files are forced to the storage before they are renamed, and the modified directories
+ * are synced in one batch with {@link #syncDirectories()}.
+ */
+@Slf4j
+public final class AtomicFileWriter {
+
+    public static final String TEMP_FILE_SUFFIX = ".generator-tmp";
+
+    @FunctionalInterface
+    public interface ContentWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    private final boolean durable;
+
+    private final Set<Path> modifiedDirectories = ConcurrentHashMap.newKeySet();
+
+    public AtomicFileWriter(boolean durable) {
+        this.durable = durable;
+    }
+
+    public boolean isDurable() {
+        return durable;
+    }
+
+    public void write(Path target, ContentWriter contentWriter) throws IOException {
+        write(target, contentWriter, null);
+    }
+
+    /**
+     * Writes the content to the target file, replacing the existing one. The permissions are set before the file
+     * is renamed, when they are given.
+     */
+    public void write(Path target, ContentWriter contentWriter, Set<PosixFilePermission> permissions) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = directory.resolve("." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_FILE_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                contentWriter.write(outputStream);
+                outputStream.flush();
+                if (durable) {
+                    channel.force(true);
+                }
+            }
+            if (permissions != null) {
+                setPermissions(tempFile, permissions);
+            }
+            move(tempFile, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        if (durable) {
+            modifiedDirectories.add(directory);
+        }
+    }
+
+    public boolean delete(Path target) throws IOException {
+        boolean deleted = Files.deleteIfExists(target);
+        if (deleted && durable) {
+            modifiedDirectories.add(target.toAbsolutePath().getParent());
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the temporary files left in the given directory (not recursively) by a writer which has not finished,
+     * e.g. because the JVM crashed. It must not be called while another writer writes into the same directory.
+     *
+     * @return the number of the deleted files
+     */
+    public int deleteStaleTempFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(directory, ".*" + TEMP_FILE_SUFFIX)) {
+            for (Path tempFile : tempFiles) {
+                if (Files.isRegularFile(tempFile) && delete(tempFile)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Syncs the directories modified since the last call, so the renames and deletions are persisted.
+     * It does nothing when the writer is not durable.
+     */
+    public void syncDirectories() {
+        List<Path> directories = new ArrayList<>(modifiedDirectories);
+        modifiedDirectories.removeAll(directories);
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Directories cannot be opened on some platforms (e.g. Windows), the renames are persisted by the OS
+                log.debug("Could not sync directory: " + directory, e);
+            }
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void setPermissions(Path path, Set<PosixFilePermission> permissions) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(path, permissions);
+        } else {
+            File file = path.toFile();
+            if (permissions.contains(PosixFilePermission.OWNER_EXECUTE)) {
+                file.setExecutable(true,
+                        !(permissions.contains(PosixFilePermission.GROUP_EXECUTE)
+                                || permissions.contains(PosixFilePermission.OTHERS_EXECUTE)));
+            }
+            if (permissions.contains(PosixFilePermission.OWNER_READ)) {
+                file.setReadable(true,
+                        !(permissions.contains(PosixFilePermission.GROUP_READ)
+                                || permissions.contains(PosixFilePermission.OTHERS_READ)));
+            }
+            if (permissions.contains(PosixFilePermission.OWNER_WRITE)) {
+                file.setWritable(true,
+                        !(permissions.contains(PosixFilePermission.GROUP_WRITE)
+                                || permissions.contains(PosixFilePermission.OTHERS_WRITE)));
+            }
+        }
+    }
+}
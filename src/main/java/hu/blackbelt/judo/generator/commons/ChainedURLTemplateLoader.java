@@ -33,6 +33,7 @@ import java.net.URL;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -50,6 +51,21 @@ public class ChainedURLTemplateLoader extends URLTemplateLoader implements URLRe
     final String contextPath;
     final Map<String, Stack<String>> pathOrder;
 
+    /**
+     * Presence of the resources by full URI in this layer, so the resources are opened only once.
+     */
+    final Map<String, Boolean> resourcePresence = new ConcurrentHashMap<>();
+
+    /**
+     * Resolved resources by location of this layer and its parents.
+     */
+    final Map<String, Optional<URL>> resolvedResources = new ConcurrentHashMap<>();
+
+    /**
+     * Index of the root, when it is indexed with {@link #indexRoots()}.
+     */
+    volatile TemplateRootIndex rootIndex;
+
 
     public static ChainedURLTemplateLoader createFromURIs(Collection<URI> uris) {
         ChainedURLTemplateLoader clientGeneratorTemplateLoader = null;
@@ -164,14 +180,14 @@ public class ChainedURLTemplateLoader extends URLTemplateLoader implements URLRe
             try {
                 URL overrideFullPathUrl = new URI(overrideFullPath).normalize().toURL();
                 stack.push(overrideFullPath);
-                try (InputStream is = overrideFullPathUrl.openStream()) {
-                    if (is != null && is.available() > 0) {
+                if (isPresent(overrideFullPathUrl)) {
+                    try {
                         return sourceAtInternal(overrideRelativePath, location);
+                    } catch (Exception e) {
+                        return sourceAtInternal(loc, location);
                     }
-                    return sourceAtInternal(loc, location);
-                } catch (Exception e) {
-                    return sourceAtInternal(loc, location);
                 }
+                return sourceAtInternal(loc, location);
             } catch (URISyntaxException e) {
                 return sourceAtInternal(loc, location);
             }
@@ -213,6 +229,15 @@ public class ChainedURLTemplateLoader extends URLTemplateLoader implements URLRe
 
     @Override
     public URL getResource(String location) throws IOException {
+        Optional<URL> resolved = resolvedResources.get(location);
+        if (resolved == null) {
+            resolved = Optional.ofNullable(getResourceInternal(location));
+            resolvedResources.put(location, resolved);
+        }
+        return resolved.orElse(null);
+    }
+
+    private URL getResourceInternal(String location) throws IOException {
         log.debug("getResource: " + root + " - " + location);
         try {
             String location_rel = location;
@@ -220,12 +245,9 @@ public class ChainedURLTemplateLoader extends URLTemplateLoader implements URLRe
                 location_rel = location.substring(1);
             }
             URL scriptUrl = new URI((root + location_rel)).normalize().toURL(); //root.resolve(location).toURL();
-                try (InputStream is = scriptUrl.openStream()) {
-                    if (is != null && is.available() > 0) {
-                        return scriptUrl;
-                    }
-                } catch (Exception e) {
-                }
+            if (isPresent(scriptUrl)) {
+                return scriptUrl;
+            }
         } catch (Exception e) {
         }
         URL url = null;
@@ -238,4 +260,48 @@ public class ChainedURLTemplateLoader extends URLTemplateLoader implements URLRe
         return url;
 
     }
+
+    /**
+     * Checks the given resource is presented and not empty. The result is cached, so the resource is opened once.
+     */
+    protected boolean isPresent(URL url) {
+        TemplateRootIndex index = rootIndex;
+        if (index != null) {
+            Boolean present = index.isPresent(url);
+            if (present != null) {
+                return present;
+            }
+        }
+        return resourcePresence.computeIfAbsent(url.toString(), u -> {
+            try (InputStream is = url.openStream()) {
+                return is != null && is.available() > 0;
+            } catch (Exception e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Indexes the root of this loader and its parents, so the presence of resources are checked with
+     * the index instead of opening them. See {@link TemplateRootIndex}.
+     */
+    public void indexRoots() {
+        rootIndex = TemplateRootIndex.load(root);
+        if (parent != null) {
+            parent.indexRoots();
+        }
+    }
+
+    /**
+     * Clears the cached resolutions of this loader and its parents. It is required when the content
+     * of the template roots are changed.
+     */
+    public void clearResolutionCache() {
+        resourcePresence.clear();
+        resolvedResources.clear();
+        rootIndex = null;
+        if (parent != null) {
+            parent.clearResolutionCache();
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Arrays;
+
+/**
+ * Algorithms of the checksums stored in the generated files' manifest. MD5 is the default, it is compatible with
+ * the manifests written by earlier versions. MURMUR3_128 is a fast non-cryptographic hash, it is enough to detect
+ * the changes of the files.
+ */
+public enum ChecksumAlgorithm {
+    @SuppressWarnings("deprecation")
+    MD5("md5", Hashing.md5()),
+    MURMUR3_128("murmur3_128", Hashing.murmur3_128());
+
+    private final String id;
+
+    private final HashFunction hashFunction;
+
+    ChecksumAlgorithm(String id, HashFunction hashFunction) {
+        this.id = id;
+        this.hashFunction = hashFunction;
+    }
+
+    /**
+     * The identifier of the algorithm used in the manifest header.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    public static ChecksumAlgorithm fromId(String id) {
+        return Arrays.stream(values())
+                .filter(a -> a.id.equalsIgnoreCase(id.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown checksum algorithm: " + id));
+    }
+}
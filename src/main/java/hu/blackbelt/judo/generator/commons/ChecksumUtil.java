@@ -20,48 +20,70 @@ package hu.blackbelt.judo.generator.commons;
  * #L%
  */
 
-import java.io.*;
-import java.math.BigInteger;
-import java.nio.file.Files;
+import com.google.common.hash.Hasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class ChecksumUtil {
 
-    public static String getMD5(byte[] input) {
+    /**
+     * The maximal size of the buffer the files are streamed through. The file is not memory mapped, because a mapped
+     * file can not be renamed or deleted on Windows until the mapping is garbage collected.
+     */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public static MessageDigest createMD5Digest() {
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            return format(md.digest(input));
+            return MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Could notnget Md5 sum", e);
+            throw new RuntimeException("Could not get Md5 sum", e);
         }
     }
 
+    public static String getMD5(byte[] input) {
+        return format(createMD5Digest().digest(input));
+    }
+
     public static String getMD5(Path path) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            try (BufferedInputStream in = new BufferedInputStream((new FileInputStream(path.toFile())));
-                 DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), md)) {
-                in.transferTo(out);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        return getChecksum(path, ChecksumAlgorithm.MD5);
+    }
+
+    public static String getChecksum(byte[] input, ChecksumAlgorithm algorithm) {
+        if (algorithm == ChecksumAlgorithm.MD5) {
+            return getMD5(input);
+        }
+        return format(algorithm.getHashFunction().hashBytes(input).asBytes());
+    }
+
+    public static String getChecksum(Path path, ChecksumAlgorithm algorithm) {
+        Hasher hasher = algorithm.getHashFunction().newHasher();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(READ_BUFFER_SIZE, channel.size())));
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hasher.putBytes(buffer);
+                buffer.clear();
             }
-            return format(md.digest());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Could not get Md5 sum", e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+        return format(hasher.hash().asBytes());
     }
 
-    private static String format(byte[] md) {
-        BigInteger number = new BigInteger(1, md);
-        String hashtext = number.toString(16);
-        // Now we need to zero pad it if you actually want the full 32 chars.
-        while (hashtext.length() < 32) {
-            hashtext = "0" + hashtext;
+    static String format(byte[] md) {
+        char[] hex = new char[md.length * 2];
+        for (int i = 0; i < md.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(md[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[md[i] & 0x0f];
         }
-        return hashtext;
+        return new String(hex);
     }
 }
@@ -0,0 +1,37 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import hu.blackbelt.judo.generator.commons.annotations.ContextAccessor;
+
+/**
+ * Typed alternative of the static {@code bindContext} methods of the {@link ContextAccessor} class. When the context
+ * accessor implements it, an instance is created with its no-arg constructor, and it is called directly before
+ * the templates are applied, instead of looking up the static method.
+ */
+@FunctionalInterface
+public interface ContextBinder {
+
+    /**
+     * Binds the value (e.g. the Handlebars {@code Context} of the template) to the current thread.
+     */
+    void bindContext(Class<?> type, Object value);
+}
@@ -0,0 +1,91 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Typed accessor of a variable of the context bound with {@link ThreadLocalContextHolder}. The converted value is
+ * cached in the bound context for the last variable read with the name, so the variables are expected to be constants:
+ * <pre>
+ * static final ContextVariable&lt;Boolean&gt; GENERATE_OPTIONAL_TYPES =
+ *         ContextVariable.of("generateOptionalTypes", v -&gt; Boolean.parseBoolean((String) v));
+ * </pre>
+ * The cache slots are allocated per name, so a variable created on each call does not grow the bound contexts,
+ * but its value is converted on each call.
+ */
+public final class ContextVariable<T> {
+
+    private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+
+    private final String name;
+
+    private final Function<Object, ? extends T> converter;
+
+    private final int slot;
+
+    private ContextVariable(String name, Function<Object, ? extends T> converter) {
+        this.name = name;
+        this.converter = converter;
+        this.slot = SLOTS.computeIfAbsent(name, n -> NEXT_SLOT.getAndIncrement());
+    }
+
+    public static ContextVariable<Object> of(String name) {
+        return new ContextVariable<>(name, Function.identity());
+    }
+
+    public static <T> ContextVariable<T> of(String name, Class<T> type) {
+        return new ContextVariable<>(name, type::cast);
+    }
+
+    /**
+     * The converter is called with the value of the variable (which can be null) once per bound context.
+     */
+    public static <T> ContextVariable<T> of(String name, Function<Object, ? extends T> converter) {
+        return new ContextVariable<>(name, converter);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the value of the variable in the context bound to the current thread.
+     *
+     * @throws IllegalStateException when no context is bound
+     */
+    public T get() {
+        return ThreadLocalContextHolder.getVariable(this);
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    T convert(Object value) {
+        return converter.apply(value);
+    }
+}
@@ -0,0 +1,94 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes generated files to an archive stream. See {@link GeneratedZipWriter} and {@link GeneratedTarWriter}.
+ */
+public interface GeneratedArchiveWriter {
+
+    /**
+     * The modification time of the entries of the reproducible archives.
+     */
+    Instant REPRODUCIBLE_TIMESTAMP = Instant.parse("1980-01-01T00:00:00Z");
+
+    /**
+     * Writes the files to the stream. The stream is not closed.
+     */
+    void write(Collection<GeneratedFile> generatedFiles, OutputStream outputStream) throws IOException;
+
+    /**
+     * Writes the files to the given file atomically, see {@link AtomicFileWriter}.
+     */
+    default void write(Collection<GeneratedFile> generatedFiles, Path file) throws IOException {
+        new AtomicFileWriter(false).write(file, outputStream -> write(generatedFiles, outputStream));
+    }
+
+    /**
+     * Writes the files of the result (where the condition is true). The files of a discriminator are placed to the
+     * directory returned by the resolver.
+     */
+    default <D> void write(GeneratorResult<D> result, Function<D, String> discriminatorDirectoryResolver,
+                           OutputStream outputStream) throws IOException {
+        List<GeneratedFile> generatedFiles = new ArrayList<>();
+        for (Map.Entry<D, Collection<GeneratedFile>> entry : result.getGeneratedByDiscriminator().entrySet()) {
+            String directory = discriminatorDirectoryResolver.apply(entry.getKey());
+            String prefix = directory.isEmpty() || directory.endsWith("/") ? directory : directory + "/";
+            entry.getValue().stream()
+                    .filter(GeneratedFile::isCondition)
+                    .forEach(f -> generatedFiles.add(withPath(f, prefix + f.getPath())));
+        }
+        result.getGenerated().stream()
+                .filter(GeneratedFile::isCondition)
+                .forEach(generatedFiles::add);
+        write(generatedFiles, outputStream);
+    }
+
+    /**
+     * Returns the files sorted by path, which is used as the order of the entries of the reproducible archives.
+     */
+    static List<GeneratedFile> sortByPath(Collection<GeneratedFile> generatedFiles) {
+        List<GeneratedFile> sorted = new ArrayList<>(generatedFiles);
+        sorted.sort(Comparator.comparing(GeneratedFile::getPath));
+        return sorted;
+    }
+
+    private static GeneratedFile withPath(GeneratedFile generatedFile, String path) {
+        return GeneratedFile.builder()
+                .path(path)
+                .content(generatedFile.getContent())
+                .contentFile(generatedFile.getContentFile())
+                .permissions(generatedFile.getPermissions())
+                .copied(generatedFile.isCopied())
+                .build();
+    }
+}
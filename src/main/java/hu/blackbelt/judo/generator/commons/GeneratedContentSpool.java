@@ -0,0 +1,123 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Spool directory used for streaming generation. The templates are rendered directly to spool files
+ * while the checksum is calculated, so the generated content is not held in heap until it is written
+ * to the target directory or archive. The spooled files are removed when the spool is closed, so it have
+ * to be closed after the generated files are written.
+ */
+@Slf4j
+public class GeneratedContentSpool implements Closeable {
+
+    @Getter
+    private final Path directory;
+
+    private final boolean temporary;
+
+    public GeneratedContentSpool(Path directory) throws IOException {
+        this(directory, false);
+    }
+
+    private GeneratedContentSpool(Path directory, boolean temporary) throws IOException {
+        this.directory = directory;
+        this.temporary = temporary;
+        Files.createDirectories(directory);
+    }
+
+    public static GeneratedContentSpool createTemporary() throws IOException {
+        return new GeneratedContentSpool(Files.createTempDirectory("judo-generator-spool"), true);
+    }
+
+    @FunctionalInterface
+    public interface ContentWriter {
+        void write(Writer writer) throws Exception;
+    }
+
+    /**
+     * Renders the content into a new spool file with UTF-8 encoding and sets the content file and checksum
+     * of the given generated file.
+     */
+    public void spool(GeneratedFile generatedFile, ContentWriter contentWriter) throws Exception {
+        spoolStream(generatedFile, out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            contentWriter.write(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Copies the given stream into a new spool file and sets the content file and checksum
+     * of the given generated file.
+     */
+    public void spool(GeneratedFile generatedFile, InputStream inputStream) throws Exception {
+        spoolStream(generatedFile, out -> inputStream.transferTo(out));
+    }
+
+    private interface StreamWriter {
+        void write(OutputStream outputStream) throws Exception;
+    }
+
+    private void spoolStream(GeneratedFile generatedFile, StreamWriter streamWriter) throws Exception {
+        Path spoolFile = Files.createTempFile(directory, "content", ".spool");
+        MessageDigest md = ChecksumUtil.createMD5Digest();
+        try (DigestOutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(spoolFile)), md)) {
+            streamWriter.write(out);
+        } catch (Exception e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+        generatedFile.setContent(null);
+        generatedFile.setContentFile(spoolFile);
+        generatedFile.setChecksum(ChecksumUtil.format(md.digest()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .filter(p -> temporary || !p.equals(directory))
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        } catch (IOException e) {
+                            log.warn("Could not delete spool file: " + p);
+                        }
+                    });
+        }
+    }
+}
@@ -22,11 +22,17 @@ package hu.blackbelt.judo.generator.commons;
 
 import lombok.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.Set;
 
 /**
  * It represents a generated file. It is used to write to directory or create a ZipStream.
+ * The content is held in memory as byte array, or when the file is generated with a
+ * {@link GeneratedContentSpool} it is referenced by the spooled content file.
  */
 @Builder
 @NoArgsConstructor
@@ -43,4 +49,64 @@ public class GeneratedFile {
     @Builder.Default
     private boolean condition = true;
 
+    private Path contentFile;
+
+    private String checksum;
+
+    /**
+     * The algorithm of the checksum set on generation time, when it is null the checksum is MD5.
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+
+    private String fingerprint;
+
+    /**
+     * The content is copied from a resource (see {@link GeneratorTemplate#isCopy()}), it is not a template output.
+     */
+    private boolean copied;
+
+    public void setContent(byte[] content) {
+        this.content = content;
+        this.contentFile = null;
+        this.checksum = null;
+        this.checksumAlgorithm = null;
+    }
+
+    /**
+     * Returns the MD5 checksum of the content.
+     */
+    public String getChecksum() {
+        return getChecksum(ChecksumAlgorithm.MD5);
+    }
+
+    /**
+     * Returns the checksum of the content with the given algorithm. When the checksum is calculated on generation
+     * time with the same algorithm it is returned, otherwise it is calculated from the content.
+     */
+    public String getChecksum(ChecksumAlgorithm algorithm) {
+        if (checksum != null && algorithm == (checksumAlgorithm != null ? checksumAlgorithm : ChecksumAlgorithm.MD5)) {
+            return checksum;
+        } else if (content == null && contentFile != null) {
+            return ChecksumUtil.getChecksum(contentFile, algorithm);
+        }
+        return ChecksumUtil.getChecksum(content != null ? content : new byte[0], algorithm);
+    }
+
+    public long getContentLength() throws IOException {
+        if (content == null && contentFile != null) {
+            return Files.size(contentFile);
+        }
+        return content != null ? content.length : 0;
+    }
+
+    /**
+     * Write the content to the given stream. The stream is not closed.
+     */
+    public void writeContentTo(OutputStream outputStream) throws IOException {
+        if (content != null) {
+            outputStream.write(content);
+        } else if (contentFile != null) {
+            Files.copy(contentFile, outputStream);
+        }
+    }
 }
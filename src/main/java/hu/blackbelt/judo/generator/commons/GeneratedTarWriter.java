@@ -0,0 +1,235 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes generated files as a tar (ustar) archive directly to a stream. The paths which do not fit to the ustar
+ * header, and the files larger than 8 GiB are written with pax extended headers.
+ * <p>
+ * The owner of the entries is root, the mode is the permissions of the file (0644 when it is not set), so the archive
+ * depends only on the files and the modification time. The writer created with {@link #reproducibleTarWriter()}
+ * sorts the entries and uses a fixed modification time.
+ */
+@Builder(builderMethodName = "generatedTarWriter")
+@Getter
+public final class GeneratedTarWriter implements GeneratedArchiveWriter {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    static final int DEFAULT_MODE = 0644;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    /**
+     * The modification time of the entries, when it is not set, the time of writing is used.
+     */
+    Instant lastModified;
+
+    /**
+     * When it is set, the entries are written in the order of their paths.
+     */
+    @Builder.Default
+    boolean sortEntries = false;
+
+    /**
+     * When it is set, the archive is compressed with gzip (tar.gz).
+     */
+    @Builder.Default
+    boolean gzip = false;
+
+    /**
+     * Returns a builder of a writer which writes the same archive for the same files.
+     */
+    public static GeneratedTarWriterBuilder reproducibleTarWriter() {
+        return generatedTarWriter()
+                .sortEntries(true)
+                .lastModified(REPRODUCIBLE_TIMESTAMP);
+    }
+
+    @Override
+    public void write(Collection<GeneratedFile> generatedFiles, OutputStream outputStream) throws IOException {
+        long mtime = (lastModified != null ? lastModified : Instant.now()).getEpochSecond();
+        OutputStream target = gzip ? new GZIPOutputStream(new NonClosingOutputStream(outputStream), 64 * 1024) : outputStream;
+        BufferedOutputStream out = new BufferedOutputStream(target, 64 * 1024);
+        long written = 0;
+        for (GeneratedFile generatedFile : sortEntries ? GeneratedArchiveWriter.sortByPath(generatedFiles) : generatedFiles) {
+            written += writeEntry(out, generatedFile, mtime);
+        }
+        // End of archive is two empty blocks, padded to the record size
+        long end = written + 2 * BLOCK_SIZE;
+        out.write(new byte[(int) (2 * BLOCK_SIZE + (RECORD_SIZE - end % RECORD_SIZE) % RECORD_SIZE)]);
+        out.flush();
+        if (gzip) {
+            // The given stream is not closed, only the gzip trailer is written
+            target.close();
+        }
+    }
+
+    private long writeEntry(OutputStream out, GeneratedFile generatedFile, long mtime) throws IOException {
+        long written = 0;
+        String path = generatedFile.getPath();
+        long size = generatedFile.getContentLength();
+        int mode = generatedFile.getPermissions() != null ? toMode(generatedFile.getPermissions()) : DEFAULT_MODE;
+
+        String[] nameAndPrefix = splitPath(path);
+        if (nameAndPrefix == null || size > MAX_OCTAL_SIZE) {
+            StringBuilder records = new StringBuilder();
+            if (nameAndPrefix == null) {
+                records.append(paxRecord("path", path));
+            }
+            if (size > MAX_OCTAL_SIZE) {
+                records.append(paxRecord("size", Long.toString(size)));
+            }
+            byte[] pax = records.toString().getBytes(StandardCharsets.UTF_8);
+            written += writeHeader(out, "PaxHeaders/" + truncate(path, 80), "", DEFAULT_MODE, pax.length, mtime, 'x');
+            out.write(pax);
+            written += pax.length + writePadding(out, pax.length);
+            if (nameAndPrefix == null) {
+                nameAndPrefix = new String[] {truncate(path, 100), ""};
+            }
+        }
+
+        written += writeHeader(out, nameAndPrefix[0], nameAndPrefix[1], mode, Math.min(size, MAX_OCTAL_SIZE), mtime, '0');
+        generatedFile.writeContentTo(out);
+        return written + size + writePadding(out, size);
+    }
+
+    private static long writeHeader(OutputStream out, String name, String prefix, int mode, long size, long mtime,
+                                    char type) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        put(header, 0, 100, name.getBytes(StandardCharsets.UTF_8));
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, mtime);
+        // The checksum is calculated with spaces in the checksum field
+        put(header, 148, 8, "        ".getBytes(StandardCharsets.US_ASCII));
+        header[156] = (byte) type;
+        put(header, 257, 8, "ustar\u000000".getBytes(StandardCharsets.US_ASCII));
+        put(header, 345, 155, prefix.getBytes(StandardCharsets.UTF_8));
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        header[154] = 0;
+        header[155] = ' ';
+        out.write(header);
+        return BLOCK_SIZE;
+    }
+
+    /**
+     * Splits the path to the name and prefix fields of the ustar header, returns null when it does not fit.
+     */
+    private static String[] splitPath(String path) {
+        int length = path.getBytes(StandardCharsets.UTF_8).length;
+        if (length <= 100) {
+            return new String[] {path, ""};
+        }
+        for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+            String prefix = path.substring(0, i);
+            String name = path.substring(i + 1);
+            if (prefix.getBytes(StandardCharsets.UTF_8).length <= 155 && name.getBytes(StandardCharsets.UTF_8).length <= 100) {
+                return new String[] {name, prefix};
+            }
+        }
+        return null;
+    }
+
+    private static String paxRecord(String key, String value) {
+        // The length of the record includes the length field itself
+        int length = key.getBytes(StandardCharsets.UTF_8).length + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() != Integer.toString(length).length()) {
+            total++;
+        }
+        return total + " " + key + "=" + value + "\n";
+    }
+
+    private static String truncate(String value, int maxBytes) {
+        String truncated = value;
+        while (truncated.getBytes(StandardCharsets.UTF_8).length > maxBytes) {
+            truncated = truncated.substring(0, truncated.length() - 1);
+        }
+        return truncated;
+    }
+
+    private static long writePadding(OutputStream out, long size) throws IOException {
+        int padding = (int) ((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+        out.write(new byte[padding]);
+        return padding;
+    }
+
+    private static void put(byte[] header, int offset, int length, byte[] value) {
+        System.arraycopy(value, 0, header, offset, Math.min(length, value.length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        StringBuilder field = new StringBuilder();
+        for (int i = octal.length(); i < length - 1; i++) {
+            field.append('0');
+        }
+        put(header, offset, length - 1, field.append(octal).toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the unix mode bits of the permissions.
+     */
+    public static int toMode(Set<PosixFilePermission> permissions) {
+        int mode = 0;
+        for (PosixFilePermission permission : permissions) {
+            // The permissions are declared in owner read, write, execute, group read, ... order
+            mode |= 0400 >> permission.ordinal();
+        }
+        return mode;
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes generated files as a zip archive directly to a stream, so the archive is not built in memory.
+ * <p>
+ * The entries are deflated one by one (or in parallel on the {@link #getDeflateExecutor()}), only the compressed
+ * content of the pending entries is held in memory. The copied files with an already compressed format
+ * (see {@link #getStoredExtensions()}) are stored without compression. Zip64 records are written when the archive
+ * exceeds the limits of the zip format.
+ * <p>
+ * The writer created with {@link #reproducibleZipWriter()} writes the same archive for the same files: the entries
+ * are sorted and have fixed timestamps. The permissions of the files are stored as unix attributes (0644 when they
+ * are not set). The paths must be unique, a duplicated path fails with {@link ZipException} before anything
+ * is written.
+ */
+@Builder(builderMethodName = "generatedZipWriter")
+@Getter
+public final class GeneratedZipWriter implements GeneratedArchiveWriter {
+
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = ImmutableSet.of(
+            "png", "jpg", "jpeg", "gif", "webp", "ico", "woff", "woff2", "pdf",
+            "zip", "jar", "war", "gz", "tgz", "bz2", "xz", "7z", "mp3", "mp4");
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_COUNT_LIMIT = 0xFFFF;
+    private static final int UNIX_HOST = 3;
+    private static final int REGULAR_FILE_MODE = 0100000;
+
+    /**
+     * The deflate level, see {@link Deflater}. When it is {@link Deflater#NO_COMPRESSION}, all entries are stored.
+     */
+    @Builder.Default
+    int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * The extensions of the copied files (see {@link GeneratedFile#isCopied()}) which are stored without compression.
+     */
+    @Builder.Default
+    Set<String> storedExtensions = DEFAULT_STORED_EXTENSIONS;
+
+    /**
+     * When it is set, the entries are deflated in parallel on it. The entries are written in order.
+     */
+    Executor deflateExecutor;
+
+    /**
+     * The maximum number of entries deflated in advance when the {@link #getDeflateExecutor()} is set.
+     */
+    @Builder.Default
+    int parallelWindow = 16;
+
+    /**
+     * The modification time of the entries, when it is not set, the time of writing is used.
+     */
+    Instant lastModified;
+
+    /**
+     * The time zone of the modification time of the entries (zip stores local time).
+     */
+    @Builder.Default
+    ZoneId zoneId = ZoneId.systemDefault();
+
+    /**
+     * When it is set, the entries are written in the order of their paths.
+     */
+    @Builder.Default
+    boolean sortEntries = false;
+
+    /**
+     * Returns a builder of a writer which writes the same archive for the same files.
+     */
+    public static GeneratedZipWriterBuilder reproducibleZipWriter() {
+        return generatedZipWriter()
+                .sortEntries(true)
+                .lastModified(REPRODUCIBLE_TIMESTAMP)
+                .zoneId(ZoneOffset.UTC);
+    }
+
+    @Override
+    public void write(Collection<GeneratedFile> generatedFiles, OutputStream outputStream) throws IOException {
+        Set<String> paths = new HashSet<>(generatedFiles.size() * 2);
+        for (GeneratedFile generatedFile : generatedFiles) {
+            if (!paths.add(generatedFile.getPath())) {
+                throw new ZipException("duplicate entry: " + generatedFile.getPath());
+            }
+        }
+
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        long dosTime = toDosTime(lastModified != null ? lastModified : Instant.now(), zoneId);
+        List<EntryRecord> records = new ArrayList<>(generatedFiles.size());
+
+        Deque<CompletableFuture<PreparedEntry>> pending = new ArrayDeque<>();
+        for (GeneratedFile generatedFile : sortEntries ? GeneratedArchiveWriter.sortByPath(generatedFiles) : generatedFiles) {
+            if (deflateExecutor != null) {
+                pending.add(CompletableFuture.supplyAsync(() -> prepare(generatedFile), deflateExecutor));
+                if (pending.size() >= parallelWindow) {
+                    records.add(writeEntry(out, join(pending.poll()), dosTime));
+                }
+            } else {
+                PreparedEntry entry;
+                try {
+                    entry = prepare(generatedFile);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                records.add(writeEntry(out, entry, dosTime));
+            }
+        }
+        while (!pending.isEmpty()) {
+            records.add(writeEntry(out, join(pending.poll()), dosTime));
+        }
+
+        writeCentralDirectory(out, records);
+        out.flush();
+    }
+
+    public void write(Collection<GeneratedFile> generatedFiles, WritableByteChannel channel) throws IOException {
+        write(generatedFiles, Channels.newOutputStream(channel));
+    }
+
+    private static PreparedEntry join(CompletableFuture<PreparedEntry> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private boolean isStored(GeneratedFile generatedFile) {
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            return true;
+        }
+        String path = generatedFile.getPath();
+        int extension = path.lastIndexOf('.');
+        return generatedFile.isCopied() && extension >= 0 && extension > path.lastIndexOf('/')
+                && storedExtensions.contains(path.substring(extension + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Calculates the CRC and the sizes of the entry. The deflated content is kept, the stored content is written
+     * from the generated file.
+     */
+    private PreparedEntry prepare(GeneratedFile generatedFile) {
+        try {
+            PreparedEntry entry = new PreparedEntry(generatedFile);
+            CRC32 crc = new CRC32();
+            if (isStored(generatedFile)) {
+                entry.method = STORED;
+                try (CheckedOutputStream checked = new CheckedOutputStream(ByteStreams.nullOutputStream(), crc)) {
+                    generatedFile.writeContentTo(checked);
+                }
+                entry.size = generatedFile.getContentLength();
+                entry.compressedSize = entry.size;
+            } else {
+                entry.method = DEFLATED;
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                Deflater deflater = new Deflater(compressionLevel, true);
+                try {
+                    CountingOutputStream counting;
+                    try (DeflaterOutputStream deflated = new DeflaterOutputStream(compressed, deflater, 8192)) {
+                        counting = new CountingOutputStream(new CheckedOutputStream(deflated, crc));
+                        generatedFile.writeContentTo(counting);
+                        counting.flush();
+                    }
+                    entry.size = counting.getCount();
+                } finally {
+                    deflater.end();
+                }
+                entry.compressedContent = compressed.toByteArray();
+                entry.compressedSize = entry.compressedContent.length;
+            }
+            entry.crc = crc.getValue();
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read content of: " + generatedFile.getPath(), e);
+        }
+    }
+
+    private EntryRecord writeEntry(CountingOutputStream out, PreparedEntry entry, long dosTime) throws IOException {
+        EntryRecord record = new EntryRecord(entry, out.getCount(), dosTime);
+        boolean zip64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+
+        ByteBuffer header = buffer(30 + record.name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? 45 : 20));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt((int) dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64 ? ZIP64_LIMIT : entry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_LIMIT : entry.size));
+        header.putShort((short) record.name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(record.name);
+        if (zip64) {
+            header.putShort((short) 1);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        out.write(header.array());
+
+        if (entry.method == STORED) {
+            entry.generatedFile.writeContentTo(out);
+        } else {
+            out.write(entry.compressedContent);
+        }
+        return record;
+    }
+
+    private void writeCentralDirectory(CountingOutputStream out, List<EntryRecord> records) throws IOException {
+        long centralDirectoryOffset = out.getCount();
+        for (EntryRecord record : records) {
+            PreparedEntry entry = record.entry;
+            List<Long> zip64Values = new ArrayList<>();
+            if (entry.size >= ZIP64_LIMIT) {
+                zip64Values.add(entry.size);
+            }
+            if (entry.compressedSize >= ZIP64_LIMIT) {
+                zip64Values.add(entry.compressedSize);
+            }
+            if (record.offset >= ZIP64_LIMIT) {
+                zip64Values.add(record.offset);
+            }
+            int extraLength = zip64Values.isEmpty() ? 0 : 4 + 8 * zip64Values.size();
+
+            ByteBuffer header = buffer(46 + record.name.length + extraLength);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) (record.versionMadeBy | (zip64Values.isEmpty() ? 20 : 45)));
+            header.putShort((short) (zip64Values.isEmpty() ? 20 : 45));
+            header.putShort((short) UTF8_FLAG);
+            header.putShort((short) entry.method);
+            header.putInt((int) record.dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt((int) Math.min(entry.compressedSize, ZIP64_LIMIT));
+            header.putInt((int) Math.min(entry.size, ZIP64_LIMIT));
+            header.putShort((short) record.name.length);
+            header.putShort((short) extraLength);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(record.externalAttributes);
+            header.putInt((int) Math.min(record.offset, ZIP64_LIMIT));
+            header.put(record.name);
+            if (!zip64Values.isEmpty()) {
+                header.putShort((short) 1);
+                header.putShort((short) (8 * zip64Values.size()));
+                zip64Values.forEach(header::putLong);
+            }
+            out.write(header.array());
+        }
+        long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+
+        if (records.size() >= ZIP64_COUNT_LIMIT || centralDirectoryOffset >= ZIP64_LIMIT || centralDirectorySize >= ZIP64_LIMIT) {
+            long zip64EndOffset = out.getCount();
+            ByteBuffer zip64End = buffer(56 + 20);
+            zip64End.putInt(ZIP64_END_SIGNATURE);
+            zip64End.putLong(44);
+            zip64End.putShort((short) 45);
+            zip64End.putShort((short) 45);
+            zip64End.putInt(0);
+            zip64End.putInt(0);
+            zip64End.putLong(records.size());
+            zip64End.putLong(records.size());
+            zip64End.putLong(centralDirectorySize);
+            zip64End.putLong(centralDirectoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0);
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1);
+            out.write(zip64End.array());
+        }
+
+        ByteBuffer end = buffer(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(records.size(), ZIP64_COUNT_LIMIT));
+        end.putShort((short) Math.min(records.size(), ZIP64_COUNT_LIMIT));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_LIMIT));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_LIMIT));
+        end.putShort((short) 0);
+        out.write(end.array());
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long toDosTime(Instant instant, ZoneId zoneId) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, zoneId);
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static final class PreparedEntry {
+        final GeneratedFile generatedFile;
+        int method;
+        long crc;
+        long size;
+        long compressedSize;
+        byte[] compressedContent;
+
+        PreparedEntry(GeneratedFile generatedFile) {
+            this.generatedFile = generatedFile;
+        }
+    }
+
+    private static final class EntryRecord {
+        final PreparedEntry entry;
+        final byte[] name;
+        final long offset;
+        final long dosTime;
+        final int versionMadeBy;
+        final int externalAttributes;
+
+        EntryRecord(PreparedEntry entry, long offset, long dosTime) {
+            this.entry = entry;
+            this.name = entry.generatedFile.getPath().getBytes(StandardCharsets.UTF_8);
+            this.offset = offset;
+            this.dosTime = dosTime;
+            // Unix host, the file type and the permissions are in the high word of the external attributes
+            Set<PosixFilePermission> permissions = entry.generatedFile.getPermissions();
+            this.versionMadeBy = UNIX_HOST << 8;
+            this.externalAttributes = (REGULAR_FILE_MODE
+                    | (permissions != null ? GeneratedTarWriter.toMode(permissions) : GeneratedTarWriter.DEFAULT_MODE)) << 16;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Executor services used by the generator. The library targets Java 17, so the virtual threads are
+ * used via reflection when the runtime supports them (Java 21+).
+ * <p>
+ * The file system operations (writing, deleting and checksumming the files) are running on the I/O executor
+ * instead of the common fork join pool, so the blocking I/O does not occupy the threads of the template rendering.
+ */
+@Slf4j
+public final class GeneratorExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+    /**
+     * Size of the platform thread pool used for I/O when virtual threads are not supported.
+     */
+    public static final int IO_POOL_SIZE = Math.max(4, Math.min(2 * Runtime.getRuntime().availableProcessors(), 32));
+
+    private static final Supplier<Executor> DEFAULT_IO_EXECUTOR = Suppliers.memoize(GeneratorExecutors::createIoExecutor);
+
+    private GeneratorExecutors() {
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task.
+     *
+     * @return the executor or empty when the runtime does not support virtual threads
+     */
+    public static Optional<ExecutorService> newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of((ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null));
+        } catch (Exception e) {
+            log.warn("Could not create virtual thread executor", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the shared I/O executor: a virtual thread per task when the runtime supports it, otherwise a bounded
+     * pool of daemon platform threads.
+     */
+    public static Executor getDefaultIoExecutor() {
+        return DEFAULT_IO_EXECUTOR.get();
+    }
+
+    /**
+     * Creates a pool of the given number of daemon threads.
+     */
+    public static ExecutorService newBoundedIoExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("generator-io-%d")
+                .build());
+    }
+
+    /**
+     * Performs the action for every item on the given executor and waits for all of them. When any of the actions
+     * fails, the first failure is thrown after all actions are finished.
+     */
+    public static <T> void forEach(Executor executor, Collection<T> items, Consumer<? super T> action) {
+        map(executor, items, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the function for every item on the given executor and returns the results in the order of the items.
+     */
+    public static <T, R> List<R> map(Executor executor, Collection<T> items, Function<? super T, ? extends R> function) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> function.apply(item), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        futures.forEach(f -> results.add(f.join()));
+        return results;
+    }
+
+    private static Executor createIoExecutor() {
+        Optional<ExecutorService> virtualThreadExecutor = newVirtualThreadExecutor();
+        if (virtualThreadExecutor.isPresent()) {
+            log.debug("Virtual threads are used for I/O");
+            return virtualThreadExecutor.get();
+        }
+        log.debug("Bounded pool of " + IO_POOL_SIZE + " threads is used for I/O");
+        return newBoundedIoExecutor(IO_POOL_SIZE);
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -25,6 +25,8 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
+import java.nio.file.attribute.BasicFileAttributes;
+
 @Builder(builderMethodName = "generatorFileEntry")
 @Getter
 @Setter
@@ -36,15 +38,85 @@ public final class GeneratorFileEntry implements Comparable {
     @NonNull
     String checksum;
 
+    /**
+     * Fingerprint of the inputs the file was generated from. It is used by {@link IncrementalGeneration}
+     * to skip the generation of unchanged files.
+     */
+    String fingerprint;
+
+    /**
+     * File stat data (size, last modified time in millis and file key) of the file when its checksum was
+     * calculated. When the stat data of the file is unchanged, the file is not hashed again.
+     */
+    Long size;
+
+    Long lastModified;
+
+    String fileKey;
+
+    /**
+     * The stat data of the files modified in this interval before the stat is taken is not recorded, because a
+     * later modification in the same timestamp granularity could not be detected.
+     */
+    static final long STAT_STABILITY_INTERVAL = 2000;
+
     public static GeneratorFileEntry fromString(String str) {
-        String[] parts = str.split(",");
-        if (parts.length != 2) {
+        String[] parts = str.split(",", -1);
+        if (parts.length < 2 || parts.length > 6) {
             throw new IllegalArgumentException("Could not parse file entry: " + str);
         }
-        return GeneratorFileEntry.generatorFileEntry()
-                .path(parts[0])
-                .checksum(parts[1])
-                .build();
+        try {
+            return GeneratorFileEntry.generatorFileEntry()
+                    .path(parts[0])
+                    .checksum(parts[1])
+                    .fingerprint(part(parts, 2))
+                    .size(part(parts, 3) != null ? Long.valueOf(parts[3]) : null)
+                    .lastModified(part(parts, 4) != null ? Long.valueOf(parts[4]) : null)
+                    .fileKey(part(parts, 5))
+                    .build();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Could not parse file entry: " + str, e);
+        }
+    }
+
+    private static String part(String[] parts, int index) {
+        return parts.length > index && !parts[index].isEmpty() ? parts[index] : null;
+    }
+
+    /**
+     * Checks whether the recorded stat data matches with the given file attributes.
+     */
+    public boolean isStatMatching(BasicFileAttributes attributes) {
+        return size != null && lastModified != null
+                && size == attributes.size()
+                && lastModified == attributes.lastModifiedTime().toMillis()
+                && (fileKey == null || fileKey.equals(formatFileKey(attributes.fileKey())));
+    }
+
+    /**
+     * Records the stat data of the given file attributes, when the file is not modified recently.
+     *
+     * @return true when the stat data is recorded
+     */
+    public boolean recordStat(BasicFileAttributes attributes) {
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (System.currentTimeMillis() - modified < STAT_STABILITY_INTERVAL) {
+            return false;
+        }
+        size = attributes.size();
+        lastModified = modified;
+        fileKey = formatFileKey(attributes.fileKey());
+        return true;
+    }
+
+    public void copyStat(GeneratorFileEntry entry) {
+        size = entry.size;
+        lastModified = entry.lastModified;
+        fileKey = entry.fileKey;
+    }
+
+    private static String formatFileKey(Object fileKey) {
+        return fileKey != null ? fileKey.toString().replace(',', ';') : null;
     }
 
     @Override
@@ -58,6 +130,13 @@ public final class GeneratorFileEntry implements Comparable {
 
     @Override
     public String toString() {
+        if (getSize() != null && getLastModified() != null) {
+            return getPath() + "," + getChecksum() + "," + (getFingerprint() != null ? getFingerprint() : "")
+                    + "," + getSize() + "," + getLastModified() + (getFileKey() != null ? "," + getFileKey() : "");
+        }
+        if (getFingerprint() != null) {
+            return getPath() + "," + getChecksum() + "," + getFingerprint();
+        }
         return getPath() + "," + getChecksum();
     }
 
@@ -20,83 +20,126 @@ package hu.blackbelt.judo.generator.commons;
  * #L%
  */
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * It represents the generation ignore. This is used to keep files, which cannot be overwrite within
  * a generation. The format is same as .gitignore
+ * <p>
+ * The ignore files are read and compiled once per directory, and the results are cached per path, so an instance
+ * is expected to be used for one generation.
  */
 @Slf4j
 public class GeneratorIgnore {
     public static final String GENERATOR_IGNORE_FILE = ".generator-ignore";
-    private static final String separator = System.getProperty("file.separator");
-
-    CacheLoader<Path, List<String>> loader = new CacheLoader<Path, List<String>>() {
-        @Override
-        public List<String> load(Path key) {
-            if (key.resolve(GENERATOR_IGNORE_FILE).toFile().exists()) {
-                try {
-                    List<String> globs = Files.readAllLines(key.resolve(GeneratorIgnore.GENERATOR_IGNORE_FILE), StandardCharsets.UTF_8);
-                    return globs;
-                } catch (IOException e) {
-                    throw new RuntimeException("Could not read file: " + key.resolve(GENERATOR_IGNORE_FILE).toFile().getAbsolutePath(), e);
-                }
-            }
-            return Collections.emptyList();
-        }
-    };
 
-    LoadingCache<Path, List<String>> cache = CacheBuilder.newBuilder().maximumSize(200).build(loader);
+    private static final IgnoreMatcher EMPTY_MATCHER = new IgnoreMatcher(Collections.emptyList());
+
+    private final Map<Path, IgnoreMatcher> matchers = new ConcurrentHashMap<>();
+
+    private final Map<Path, Boolean> results = new ConcurrentHashMap<>();
 
     private final Path rootPath;
 
     public GeneratorIgnore(Path rootPath) {
-        this.rootPath = rootPath.normalize();
+        this.rootPath = rootPath.toAbsolutePath().normalize();
     }
 
     public boolean shouldExcludeFile(Path absolutePath) {
-        if (!isChildPath(rootPath, absolutePath)) {
+        Path path = absolutePath.toAbsolutePath().normalize();
+        if (!path.startsWith(rootPath)) {
             throw new IllegalArgumentException(absolutePath.toFile().getAbsolutePath() + " is not part of " + rootPath.toFile().getAbsolutePath());
         }
-        Path currentPath = absolutePath.getParent();
-        boolean match = false;
-        while (!match && isChildPath(rootPath, currentPath)) {
-            try {
-                List<String> globs = cache.get(currentPath);
-                Path relativePath = Paths.get(absolutePath.normalize().toString().replace(currentPath.toString() + separator, ""));
-                match = globs.stream().anyMatch((glob) -> {
-                    final PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
-                    return pathMatcher.matches(relativePath);
-                });
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
+        return results.computeIfAbsent(path, this::evaluate);
+    }
+
+    /**
+     * Evaluates the given paths relative to the root.
+     *
+     * @return the paths which have to be excluded
+     */
+    public Set<String> getExcludedPaths(Collection<String> relativePaths) {
+        Set<String> excluded = new HashSet<>();
+        for (String relativePath : relativePaths) {
+            if (shouldExcludeFile(rootPath.resolve(relativePath))) {
+                excluded.add(relativePath);
             }
-            currentPath = currentPath.getParent();
         }
-        return match;
+        return excluded;
     }
 
-
-    private boolean isChildPath(Path possibleParent, Path maybeChild) {
-        File fileToTest = maybeChild.toFile();
-        while (fileToTest != null) {
-            if (fileToTest.equals(possibleParent.toFile())) {
+    private boolean evaluate(Path path) {
+        Path currentPath = path.getParent();
+        while (currentPath != null && currentPath.startsWith(rootPath)) {
+            IgnoreMatcher matcher = matchers.computeIfAbsent(currentPath, GeneratorIgnore::loadMatcher);
+            if (matcher != EMPTY_MATCHER && matcher.matches(currentPath.relativize(path))) {
                 return true;
             }
-            fileToTest = fileToTest.getParentFile();
+            currentPath = currentPath.getParent();
         }
         return false;
     }
+
+    private static IgnoreMatcher loadMatcher(Path directory) {
+        Path ignoreFile = directory.resolve(GENERATOR_IGNORE_FILE);
+        if (!Files.exists(ignoreFile)) {
+            return EMPTY_MATCHER;
+        }
+        try {
+            List<String> globs = new ArrayList<>();
+            for (String line : Files.readAllLines(ignoreFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    globs.add(line);
+                }
+            }
+            return globs.isEmpty() ? EMPTY_MATCHER : new IgnoreMatcher(globs);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file: " + ignoreFile.toFile().getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * The compiled globs of an ignore file. The globs without groups are combined into one group, so they are
+     * matched with one expression.
+     */
+    private static final class IgnoreMatcher {
+        private final List<PathMatcher> pathMatchers = new ArrayList<>();
+
+        IgnoreMatcher(List<String> globs) {
+            List<String> combinable = new ArrayList<>();
+            for (String glob : globs) {
+                if (glob.indexOf('{') >= 0 || glob.indexOf('}') >= 0 || glob.indexOf(',') >= 0) {
+                    pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+                } else {
+                    combinable.add(glob);
+                }
+            }
+            if (combinable.size() == 1) {
+                pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + combinable.get(0)));
+            } else if (combinable.size() > 1) {
+                pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:{" + String.join(",", combinable) + "}"));
+            }
+        }
+
+        boolean matches(Path relativePath) {
+            for (PathMatcher pathMatcher : pathMatchers) {
+                if (pathMatcher.matches(relativePath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The generated files' manifest (.generated-files) of a target directory. Every line contains an entry
+ * (see {@link GeneratorFileEntry}), the headers are lines in the strict `# name: value` format. An entry always
+ * contains a comma and a header never does, so a generated path starting with # is still read as an entry.
+ * <p>
+ * The checksum header records the algorithm of the checksums. It is written only when it is not MD5, so the
+ * MD5 manifests are the same as the ones written by earlier versions, and a manifest without header is MD5.
+ */
+@Builder(builderMethodName = "generatorManifest")
+@Getter
+public final class GeneratorManifest {
+
+    public static final String HEADER_PREFIX = "#";
+
+    public static final String CHECKSUM_HEADER = "checksum";
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile("^" + Pattern.quote(HEADER_PREFIX) + " ([\\w-]+): ([^,]*)$");
+
+    @NonNull
+    @Builder.Default
+    ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+
+    @NonNull
+    @Builder.Default
+    Collection<GeneratorFileEntry> entries = Collections.emptyList();
+
+    /**
+     * Reads the manifest of the given directory. When it does not exist, an empty manifest is returned.
+     */
+    public static GeneratorManifest read(File targetDirectory, String generatedFileName) {
+        Path manifestFile = targetDirectory.toPath().toAbsolutePath().resolve(generatedFileName);
+        if (!Files.exists(manifestFile)) {
+            return GeneratorManifest.generatorManifest().build();
+        }
+        try {
+            return parse(Files.readAllLines(manifestFile, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file: " + manifestFile, e);
+        }
+    }
+
+    public static GeneratorManifest parse(List<String> lines) {
+        ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+        List<GeneratorFileEntry> entries = new ArrayList<>();
+        for (String line : lines) {
+            Matcher header = HEADER_PATTERN.matcher(line);
+            if (header.matches()) {
+                if (CHECKSUM_HEADER.equals(header.group(1))) {
+                    checksumAlgorithm = ChecksumAlgorithm.fromId(header.group(2));
+                }
+            } else if (!line.isBlank()) {
+                entries.add(GeneratorFileEntry.fromString(line));
+            }
+        }
+        return GeneratorManifest.generatorManifest()
+                .checksumAlgorithm(checksumAlgorithm)
+                .entries(entries)
+                .build();
+    }
+
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        if (checksumAlgorithm != ChecksumAlgorithm.MD5) {
+            lines.add(HEADER_PREFIX + " " + CHECKSUM_HEADER + ": " + checksumAlgorithm.getId());
+        }
+        entries.forEach(e -> lines.add(e.toString()));
+        return lines;
+    }
+
+    public void write(File targetDirectory, String generatedFileName) {
+        write(targetDirectory, generatedFileName, new AtomicFileWriter(false));
+    }
+
+    /**
+     * Writes the manifest with the given writer, so it is replaced atomically.
+     */
+    public void write(File targetDirectory, String generatedFileName, AtomicFileWriter writer) {
+        Path manifestFile = targetDirectory.toPath().toAbsolutePath().resolve(generatedFileName);
+        try {
+            byte[] content = String.join(ModelGenerator.NEWLINE, toLines()).getBytes(StandardCharsets.UTF_8);
+            writer.write(manifestFile, outputStream -> outputStream.write(content));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write file: " + manifestFile, e);
+        }
+    }
+}
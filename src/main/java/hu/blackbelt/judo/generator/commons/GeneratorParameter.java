@@ -28,6 +28,7 @@ import lombok.NonNull;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -59,4 +60,39 @@ public final class GeneratorParameter<T> {
 
     @Builder.Default
     boolean validateChecksum = true;
+
+    /**
+     * The executor of the file system operations when the result is written to the target directories.
+     */
+    @Builder.Default
+    Executor ioExecutor = GeneratorExecutors.getDefaultIoExecutor();
+
+    @Builder.Default
+    ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+
+    /**
+     * When it is set, the files with unchanged stat data (size, modification time) are not hashed again on
+     * the validation of manual changes. See {@link ModelGenerator.WriteDirectoryArgument#isStatBasedValidation()}.
+     */
+    @Builder.Default
+    boolean statBasedValidation = false;
+
+    /**
+     * When it is set, the changes of the target directories are calculated and reported
+     * (see {@link ModelGenerator#generateToDirectoryWithReport(GeneratorParameter)}), but they are not written.
+     */
+    @Builder.Default
+    boolean dryRun = false;
+
+    /**
+     * See {@link ModelGenerator.WriteDirectoryArgument#isDurableWrites()}.
+     */
+    @Builder.Default
+    boolean durableWrites = false;
+
+    /**
+     * See {@link ModelGenerator.WriteDirectoryArgument#isSkipUnchangedContent()}.
+     */
+    @Builder.Default
+    boolean skipUnchangedContent = false;
 }
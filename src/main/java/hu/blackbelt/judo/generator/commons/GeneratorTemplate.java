@@ -25,14 +25,16 @@ import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 
 /**
@@ -79,7 +81,7 @@ public class GeneratorTemplate {
 
     @Builder.Default
     @Getter
-    private ExpressionParser parser = new SpelExpressionParser();
+    private ExpressionParser parser = SpelExpressionCache.getParser(SpelCompilerMode.OFF);
 
     @Builder.Default
     private boolean copy = false;
@@ -88,9 +90,13 @@ public class GeneratorTemplate {
     private String permission = null;
 
     public Map<String, Expression> parseExpressions() {
+        return parseExpressions(parser::parseExpression);
+    }
+
+    public Map<String, Expression> parseExpressions(Function<String, Expression> expressionParser) {
         Map<String, Expression> templateExpressions = new HashMap<>();
         templateContext.stream().forEach(ctx -> {
-            final Expression contextTemplate = parser.parseExpression(ctx.getExpression());
+            final Expression contextTemplate = expressionParser.apply(ctx.getExpression());
             templateExpressions.put(ctx.getName(), contextTemplate);
         });
         return templateExpressions;
@@ -101,19 +107,29 @@ public class GeneratorTemplate {
     }
 
     public void evalToContextBuilder(TemplateEvaulator templateEvaulator, Context.Builder contextBuilder, StandardEvaluationContext templateExpressionContext) {
+        evalTemplateContext(templateEvaulator, templateExpressionContext).forEach(contextBuilder::combine);
+    }
+
+    /**
+     * Evaluates the template context expressions, the values are the same which are combined to the Handlebars context
+     * with {@link #evalToContextBuilder(TemplateEvaulator, Context.Builder, StandardEvaluationContext)}.
+     */
+    public Map<String, Object> evalTemplateContext(TemplateEvaulator templateEvaulator, StandardEvaluationContext templateExpressionContext) {
+        Map<String, Object> values = new LinkedHashMap<>();
         templateContext.stream().forEach(ctx -> {
             Expression expression = templateEvaulator.getTemplateExpressions().get(ctx.getName());
             if (expression != null) {
                 try {
-                    Class type = templateEvaulator.getTemplateExpressions().get(ctx.getName()).getValueType(templateExpressionContext);
-                    Object rootObject = templateEvaulator.getTemplateExpressions().get(ctx.getName()).getValue(templateExpressionContext, type);
-                    Object value = templateEvaulator.getTemplateExpressions().get(ctx.getName()).getValue(templateExpressionContext, rootObject);
-                    contextBuilder.combine(ctx.getName(), value);
+                    Class type = expression.getValueType(templateExpressionContext);
+                    Object rootObject = expression.getValue(templateExpressionContext, type);
+                    Object value = expression.getValue(templateExpressionContext, rootObject);
+                    values.put(ctx.getName(), value);
                 } catch (Exception e) {
                     throw new IllegalArgumentException("Could not evaluate template context expression: " + expression.getExpressionString() + " in " + this);
                 }
             }
         });
+        return values;
     }
 
 }
@@ -0,0 +1,111 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import org.springframework.expression.OperatorOverloader;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.support.StandardOperatorOverloader;
+import org.springframework.expression.spel.support.StandardTypeComparator;
+import org.springframework.expression.spel.support.StandardTypeConverter;
+import org.springframework.expression.spel.support.StandardTypeLocator;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluation context created by {@link ModelGeneratorContext}. The helper functions are not registered one by one,
+ * the function table of the generator context is shared, and it is looked up when there is no variable with the name.
+ * The property accessors are shared too, so their caches are kept across the contexts.
+ */
+final class HelperEvaluationContext extends StandardEvaluationContext {
+
+    private static final TypeConverter DEFAULT_TYPE_CONVERTER = new StandardTypeConverter();
+
+    private static final TypeComparator DEFAULT_TYPE_COMPARATOR = new StandardTypeComparator();
+
+    private static final OperatorOverloader DEFAULT_OPERATOR_OVERLOADER = new StandardOperatorOverloader();
+
+    private final Map<String, Method> functions;
+
+    private final List<PropertyAccessor> propertyAccessors;
+
+    private final Map<String, Object> variables = new ConcurrentHashMap<>();
+
+    HelperEvaluationContext(Map<String, Method> functions, List<PropertyAccessor> propertyAccessors) {
+        this.functions = functions;
+        this.propertyAccessors = propertyAccessors;
+        resetSettings();
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        if (value != null) {
+            variables.put(name, value);
+        } else {
+            variables.remove(name);
+        }
+    }
+
+    @Override
+    public void setVariables(Map<String, Object> newVariables) {
+        newVariables.forEach(this::setVariable);
+    }
+
+    @Override
+    public void registerFunction(String name, Method method) {
+        variables.put(name, method);
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        Object value = variables.get(name);
+        return value != null ? value : functions.get(name);
+    }
+
+    /**
+     * Removes the variables and the root object, and restores the default settings (the resolvers, accessors, type
+     * locator, etc.), so the context can be reused.
+     */
+    void reset() {
+        variables.clear();
+        setRootObject(null);
+        resetSettings();
+    }
+
+    private void resetSettings() {
+        setPropertyAccessors(new ArrayList<>(propertyAccessors));
+        // The default resolvers are created on the next use
+        setConstructorResolvers(null);
+        setMethodResolvers(null);
+        setBeanResolver(null);
+        // The type locator is mutable (imports), so it is not shared
+        setTypeLocator(new StandardTypeLocator());
+        setTypeConverter(DEFAULT_TYPE_CONVERTER);
+        setTypeComparator(DEFAULT_TYPE_COMPARATOR);
+        setOperatorOverloader(DEFAULT_OPERATOR_OVERLOADER);
+    }
+}
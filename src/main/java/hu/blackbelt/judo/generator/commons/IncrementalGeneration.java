@@ -0,0 +1,136 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental generation skips the template evaluation of the files where the inputs are unchanged since the
+ * last generation. The fingerprint of the inputs (template source, helpers, template context values and the
+ * given evaluation context variables) is stored in the generated files' manifest. When the fingerprint of a file
+ * matches with the stored one and the file is presented in the target directory, the existing file is reused.
+ * <p>
+ * The values are fingerprinted with valueFingerprint, which is required. It has to return a representation of the
+ * value which is stable over the runs and changes when anything changes which is used by the template (the default
+ * toString() of the model elements is identity based, and a toString() which does not contain all the properties
+ * used causes stale files). The template context values are evaluated the same way as for the Handlebars context.
+ * The partials included by name are part of the template checksum, the dynamic partials are not, so when they can
+ * change, the version of the templates have to be set as salt.
+ */
+@Builder(builderMethodName = "incrementalGeneration")
+@Getter
+public final class IncrementalGeneration {
+
+    @NonNull
+    File targetDirectory;
+
+    @Builder.Default
+    String generatorFilesName = ModelGenerator.GENERATED_FILES;
+
+    @Builder.Default
+    Collection<String> variables = ImmutableList.of("self");
+
+    @NonNull
+    Function<Object, String> valueFingerprint;
+
+    @Builder.Default
+    String salt = "";
+
+    @Getter(AccessLevel.NONE)
+    private final Supplier<GeneratorManifest> savedManifest = Suppliers.memoize(() ->
+            GeneratorManifest.read(targetDirectory, generatorFilesName));
+
+    @Getter(AccessLevel.NONE)
+    private final Supplier<Map<String, GeneratorFileEntry>> savedFileEntries = Suppliers.memoize(() ->
+            savedManifest.get().getEntries().stream()
+                    .collect(Collectors.toMap(GeneratorFileEntry::getPath, v -> v, (a1, a2) -> a1)));
+
+    /**
+     * Returns the fingerprint of the inputs of the file, or null when the helpers cannot be fingerprinted
+     * (see {@link ModelGeneratorContext#getHelpersChecksum()}), then the file is not reused.
+     */
+    public String calculateFingerprint(TemplateEvaulator templateEvaulator, StandardEvaluationContext evaluationContext, GeneratedFile generatedFile) {
+        String helpersChecksum = templateEvaulator.getProjectGenerator().getHelpersChecksum();
+        if (helpersChecksum == null) {
+            return null;
+        }
+        MessageDigest md = ChecksumUtil.createMD5Digest();
+        update(md, salt);
+        update(md, helpersChecksum);
+        update(md, templateEvaulator.getTemplateChecksum());
+        update(md, generatedFile.getPath());
+        update(md, String.valueOf(generatedFile.isCondition()));
+        for (String variable : variables) {
+            update(md, variable);
+            update(md, valueFingerprint.apply(evaluationContext.lookupVariable(variable)));
+        }
+        new TreeMap<>(templateEvaulator.getGeneratorTemplate().evalTemplateContext(templateEvaulator, evaluationContext))
+                .forEach((name, value) -> {
+                    update(md, name);
+                    update(md, valueFingerprint.apply(value));
+                });
+        return ChecksumUtil.format(md.digest());
+    }
+
+    /**
+     * When the fingerprint of the given file matches with the last generated one and the file exists in the
+     * target directory, the content of the file is set to the existing file.
+     *
+     * @return true when the file is reused
+     */
+    public boolean reuseIfUnchanged(GeneratedFile generatedFile) {
+        GeneratorFileEntry savedFileEntry = savedFileEntries.get().get(generatedFile.getPath());
+        if (savedFileEntry == null || generatedFile.getFingerprint() == null
+                || !generatedFile.getFingerprint().equals(savedFileEntry.getFingerprint())) {
+            return false;
+        }
+        File file = new File(targetDirectory, generatedFile.getPath());
+        if (!file.isFile()) {
+            return false;
+        }
+        generatedFile.setContent(null);
+        generatedFile.setContentFile(file.toPath());
+        generatedFile.setChecksum(savedFileEntry.getChecksum());
+        generatedFile.setChecksumAlgorithm(savedManifest.get().getChecksumAlgorithm());
+        return true;
+    }
+
+    private static void update(MessageDigest md, String value) {
+        md.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+}
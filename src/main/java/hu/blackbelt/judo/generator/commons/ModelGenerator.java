@@ -23,34 +23,35 @@ package hu.blackbelt.judo.generator.commons;
 import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.ValueResolver;
 import com.github.jknack.handlebars.io.URLTemplateLoader;
-import com.google.common.base.Charsets;
 import com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.*;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.stream.Stream;
 
 /**
  * This class loads descriptor yaml file and processing it.
@@ -74,7 +75,21 @@ public class ModelGenerator<M> {
             final GeneratorTemplate generatorTemplate,
             final Context.Builder contextBuilder,
             final Logger log) {
+        return generateFile(generatorContext, evaluationContext, templateEvaulator, generatorTemplate, contextBuilder, null, log);
+    }
 
+    /**
+     * Generate a file. When incremental generation is defined and the fingerprint of the inputs are the same as
+     * in the last generation, the template is not evaluated, the file is reused from the target directory.
+     */
+    public static GeneratedFile generateFile(
+            final ModelGeneratorContext generatorContext,
+            final StandardEvaluationContext evaluationContext,
+            final TemplateEvaulator templateEvaulator,
+            final GeneratorTemplate generatorTemplate,
+            final Context.Builder contextBuilder,
+            final IncrementalGeneration incrementalGeneration,
+            final Logger log) {
 
         GeneratedFile generatedFile = new GeneratedFile();
         boolean condition = true;
@@ -86,6 +101,7 @@ public class ModelGenerator<M> {
             }
         }
         generatedFile.setCondition(condition);
+        generatedFile.setCopied(generatorTemplate.isCopy());
 
         try {
             generatedFile.setPath(templateEvaulator.getPathExpression().getValue(evaluationContext, String.class));
@@ -93,32 +109,45 @@ public class ModelGenerator<M> {
             throw new IllegalArgumentException("Could not evaluate path expression in " + generatorTemplate.toString());
         }
 
-        if (generatorTemplate.isCopy()) {
-            String location = generatorTemplate.getTemplateName();
-            if (location.startsWith("/")) {
-                location =  location.substring(1);
-            }
-            location = generatorContext.getTemplateLoader().resolve(location);
+        boolean reused = false;
+        if (incrementalGeneration != null) {
+            generatedFile.setFingerprint(incrementalGeneration.calculateFingerprint(templateEvaulator, evaluationContext, generatedFile));
+            reused = incrementalGeneration.reuseIfUnchanged(generatedFile);
+        }
+
+        if (reused) {
+            log.debug("Inputs are unchanged, reusing: " + generatedFile.getPath());
+        } else if (generatorTemplate.isCopy()) {
             try {
-                URL resource = generatorContext.getUrlResolver().getResource(location);
+                URL resource = getCopyResource(generatorContext, generatorTemplate);
                 if (resource != null) {
-                    generatedFile.setContent(ByteStreams.toByteArray(resource.openStream()));
-                }  else {
-                    log.error("Could not locate: " + location);
+                    try (InputStream is = resource.openStream()) {
+                        if (generatorContext.getContentSpool() != null) {
+                            generatorContext.getContentSpool().spool(generatedFile, is);
+                        } else {
+                            generatedFile.setContent(ByteStreams.toByteArray(is));
+                        }
+                    }
                 }
             } catch (Exception e) {
-                log.error("Could not resolve: " + location);
+                log.error("Could not resolve: " + generatorTemplate.getTemplateName());
             }
         } else {
-            StringWriter sourceFile = new StringWriter();
             try {
                 Context context = contextBuilder.build();
                 callBindContextForTypeIfCan(generatorContext, Context.class, context);
-                templateEvaulator.getTemplate().apply(context, sourceFile);
+                if (generatorContext.getContentSpool() != null) {
+                    generatorContext.getContentSpool().spool(generatedFile, writer -> templateEvaulator.getTemplate().apply(context, writer));
+                } else {
+                    ByteArrayOutputStream sourceFile = new ByteArrayOutputStream();
+                    Writer writer = new OutputStreamWriter(sourceFile, StandardCharsets.UTF_8);
+                    templateEvaulator.getTemplate().apply(context, writer);
+                    writer.flush();
+                    generatedFile.setContent(sourceFile.toByteArray());
+                }
             } catch (Exception e) {
                 throw new RuntimeException("Could not generate file: " + generatedFile.getPath(), e);
             }
-            generatedFile.setContent(sourceFile.toString().getBytes(Charsets.UTF_8));
         }
 
         String permissions = null;
@@ -139,6 +168,27 @@ public class ModelGenerator<M> {
         return generatedFile;
     }
 
+    /**
+     * Returns the URL of the resource copied by a copy template, or null when it could not be located.
+     */
+    public static URL getCopyResource(ModelGeneratorContext generatorContext, GeneratorTemplate generatorTemplate) {
+        String location = generatorTemplate.getTemplateName();
+        if (location.startsWith("/")) {
+            location =  location.substring(1);
+        }
+        location = generatorContext.getTemplateLoader().resolve(location);
+        try {
+            URL resource = generatorContext.getUrlResolver().getResource(location);
+            if (resource == null) {
+                log.error("Could not locate: " + location);
+            }
+            return resource;
+        } catch (Exception e) {
+            log.error("Could not resolve: " + location);
+            return null;
+        }
+    }
+
     public static <D> Consumer<Map.Entry<D, Collection<GeneratedFile>>> getDirectoryWriterForActor(
             Function<D, File> actorTypeTargetDirectoryResolver,
             Function<D, String> actorTypeNameResolver,  boolean validateChecksum, Logger log) {
@@ -151,60 +201,253 @@ public class ModelGenerator<M> {
     }
 
     public static void writeDirectory(Collection<GeneratedFile> generatedFiles, File targetDirectory, String generatorFilesName, boolean validateChecksum) {
-        Collection<GeneratedFile> generatedFilesFilteredWithCondition = generatedFiles.stream().filter(f -> f.isCondition()).collect(Collectors.toList());
+        writeDirectory(WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(generatedFiles)
+                .targetDirectory(targetDirectory)
+                .generatorFilesName(generatorFilesName)
+                .validateChecksum(validateChecksum)
+                .build());
+    }
+
+    @Builder(builderMethodName = "writeDirectoryArgument")
+    @Getter
+    public static final class WriteDirectoryArgument {
+        @NonNull
+        Collection<GeneratedFile> generatedFiles;
+
+        @NonNull
+        File targetDirectory;
+
+        @Builder.Default
+        String generatorFilesName = GENERATED_FILES;
+
+        @Builder.Default
+        boolean validateChecksum = true;
+
+        /**
+         * The executor of the file system operations (delete, write, checksum calculation).
+         * See {@link GeneratorExecutors#getDefaultIoExecutor()}.
+         */
+        @Builder.Default
+        Executor ioExecutor = GeneratorExecutors.getDefaultIoExecutor();
+
+        /**
+         * The algorithm of the checksums written to the manifest. When the saved manifest uses a different
+         * algorithm, all files are written once.
+         */
+        @Builder.Default
+        ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.MD5;
+
+        /**
+         * When it is set, the stat data (size, last modified time, file key) of the files is stored in the manifest,
+         * and the files where it is unchanged are not hashed again on validation.
+         */
+        @Builder.Default
+        boolean statBasedValidation = false;
+
+        /**
+         * When it is set, the written files are forced to the storage before they are renamed, and the modified
+         * directories are synced before and after the manifest is written. The files are written atomically
+         * (see {@link AtomicFileWriter}) regardless of it.
+         */
+        @Builder.Default
+        boolean durableWrites = false;
+
+        /**
+         * When it is set, the files which are not in the manifest (or the manifest uses a different checksum algorithm)
+         * are compared with the generated content before they are written, and the identical ones are not touched,
+         * so their modification time is kept.
+         */
+        @Builder.Default
+        boolean skipUnchangedContent = false;
+    }
+
+    public static void writeDirectory(WriteDirectoryArgument args) {
+        applySyncPlan(createSyncPlan(args));
+    }
 
-        GeneratorIgnore generatorIgnore = new GeneratorIgnore(targetDirectory.toPath());
-        Collection<GeneratorFileEntry> generatorFileEntryCollection = getGeneratorFiles(generatedFilesFilteredWithCondition);
-        Collection<GeneratorFileEntry> savedFileEntryCollection = readGeneratedFiles(targetDirectory, generatorFilesName);
-        Collection<GeneratorFileEntry> filesystemFileEntryCollection = readFilesystemEntries(targetDirectory, savedFileEntryCollection);
+    /**
+     * Compares the generated files with the saved manifest and the target directory, and collects the changes
+     * required to synchronize them. The target directory is not modified.
+     */
+    public static SyncPlan createSyncPlan(WriteDirectoryArgument args) {
+        File targetDirectory = args.targetDirectory;
+        Collection<GeneratedFile> generatedFilesFilteredWithCondition = args.generatedFiles.stream().filter(f -> f.isCondition()).collect(Collectors.toList());
+
+        Collection<GeneratorFileEntry> generatorFileEntryCollection = getGeneratorFiles(generatedFilesFilteredWithCondition, args.checksumAlgorithm);
+        GeneratorManifest savedManifest = GeneratorManifest.read(targetDirectory, args.generatorFilesName);
+        // The filesystem checksums are compared with the saved ones, so they are calculated with the saved algorithm
+        Collection<GeneratorFileEntry> filesystemFileEntryCollection = readFilesystemEntries(targetDirectory, savedManifest.getEntries(),
+                args.ioExecutor, savedManifest.getChecksumAlgorithm(), args.statBasedValidation);
+        boolean savedChecksumsComparable = savedManifest.getChecksumAlgorithm() == args.checksumAlgorithm;
 
         Map<String, GeneratorFileEntry> generatorFileEntryMap = generatorFileEntryCollection.stream()
                 .collect(Collectors.toMap(GeneratorFileEntry::getPath, v -> v, (a1, a2) -> a1));
-        Map<String, GeneratorFileEntry> savedFileEntryMap = savedFileEntryCollection.stream()
+        Map<String, GeneratorFileEntry> savedFileEntryMap = savedManifest.getEntries().stream()
                 .collect(Collectors.toMap(GeneratorFileEntry::getPath, v -> v, (a1, a2) -> a1));
         Map<String, GeneratorFileEntry> filesystemFileEntryMap = filesystemFileEntryCollection.stream()
                 .collect(Collectors.toMap(GeneratorFileEntry::getPath, v -> v, (a1, a2) -> a1));
 
-        // Delete files which is presented in the saved entry collection and presented in the filesystem, but it's not presented
-        // in the saved collection
-        filesystemFileEntryCollection.parallelStream()
-                .filter(f -> !generatorFileEntryMap.containsKey(f.getPath()))
-                .filter(f -> !generatorIgnore.shouldExcludeFile(new File(targetDirectory, f.getPath()).toPath()))
-                .forEach(f -> new File(targetDirectory, f.getPath()).delete());
-
-        if (validateChecksum) {
-            // Check files where filesystem checksum does not match with the last generated ones and it's not ignored.
-            List<GeneratorFileEntry> checksumMismatchInFilesystem = filesystemFileEntryCollection.stream()
-                    .filter(f -> savedFileEntryMap.containsKey(f.getPath()))
-                    .filter(f -> !f.getChecksum().equals(savedFileEntryMap.get(f.getPath()).getChecksum()))
-                    .filter(f -> !generatorIgnore.shouldExcludeFile(new File(targetDirectory, f.getPath()).toPath()))
-                    .collect(Collectors.toList());
-
-            if (checksumMismatchInFilesystem.size() > 0) {
-                throw new IllegalStateException("There are manual changes in the generated files.\n" +
-                        "Please discard the changes, delete file or put them to .generator-ignore:\n\t" +
-                        String.join("\n\t", checksumMismatchInFilesystem.stream()
-                                .map(f -> f.getPath()).collect(Collectors.toList())));
+        SortedSet<String> paths = new TreeSet<>(generatorFileEntryMap.keySet());
+        paths.addAll(filesystemFileEntryMap.keySet());
+        Set<String> ignoredPaths = new GeneratorIgnore(targetDirectory.toPath()).getExcludedPaths(paths);
+
+        List<String> filesToDelete = new ArrayList<>();
+        Set<String> pathsToWrite = new HashSet<>();
+        List<String> contentCandidates = new ArrayList<>();
+        List<String> unchangedFiles = new ArrayList<>();
+        List<String> ignoredFiles = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        for (String path : paths) {
+            if (ignoredPaths.contains(path)) {
+                ignoredFiles.add(path);
+                continue;
+            }
+            GeneratorFileEntry generated = generatorFileEntryMap.get(path);
+            GeneratorFileEntry filesystem = filesystemFileEntryMap.get(path);
+            GeneratorFileEntry saved = savedFileEntryMap.get(path);
+
+            // The file has been written by an interrupted generation, so the manifest does not contain its checksum yet
+            boolean filesystemUpToDate = generated != null && filesystem != null && savedChecksumsComparable
+                    && filesystem.getChecksum().equals(generated.getChecksum());
+
+            // The filesystem checksum does not match with the last generated one
+            if (filesystem != null && saved != null && !filesystem.getChecksum().equals(saved.getChecksum()) && !filesystemUpToDate) {
+                conflicts.add(path);
+            }
+
+            if (generated == null) {
+                // Presented in the saved entries and in the filesystem, but not generated anymore
+                filesToDelete.add(path);
+            } else if (filesystem == null || saved == null || !savedChecksumsComparable
+                    || !(saved.getChecksum().equals(generated.getChecksum()) || filesystemUpToDate)) {
+                pathsToWrite.add(path);
+                if (filesystem == null || !savedChecksumsComparable) {
+                    contentCandidates.add(path);
+                }
+            } else {
+                unchangedFiles.add(path);
             }
         }
 
-        // Check files where generated checksum does not match with the last generated ones.
-        Map<String, GeneratorFileEntry> haveToGenerate = generatorFileEntryCollection.stream()
-                .filter(f ->
-                        !filesystemFileEntryMap.containsKey(f.getPath()) ||
-                        !savedFileEntryMap.containsKey(f.getPath()) ||
-                                !(savedFileEntryMap.containsKey(f.getPath())
-                                        && savedFileEntryMap.get(f.getPath()).getChecksum().equals(f.getChecksum())))
-                .filter(f -> !generatorIgnore.shouldExcludeFile(new File(targetDirectory, f.getPath()).toPath()))
-                .collect(Collectors.toMap(GeneratorFileEntry::getPath, v -> v, (a1, a2) -> a1));
+        if (args.skipUnchangedContent && !contentCandidates.isEmpty()) {
+            // The files which are not known by the manifest are compared with the generated content
+            Map<String, GeneratedFile> generatedFileMap = generatedFilesFilteredWithCondition.stream()
+                    .collect(Collectors.toMap(GeneratedFile::getPath, v -> v, (a1, a2) -> a1));
+            GeneratorExecutors.map(args.ioExecutor, contentCandidates,
+                            path -> isContentUnchanged(targetDirectory, generatedFileMap.get(path), args.checksumAlgorithm) ? path : null)
+                    .stream()
+                    .filter(Objects::nonNull)
+                    .forEach(path -> {
+                        pathsToWrite.remove(path);
+                        unchangedFiles.add(path);
+                    });
+            Collections.sort(unchangedFiles);
+        }
 
-        generatedFilesFilteredWithCondition.parallelStream()
-                .filter(f -> haveToGenerate.containsKey(f.getPath()))
-                .forEach(f -> writeFile(targetDirectory, generatorIgnore, f));
+        return SyncPlan.syncPlan()
+                .argument(args)
+                .filesToDelete(filesToDelete)
+                .filesToWrite(generatedFilesFilteredWithCondition.stream()
+                        .filter(f -> pathsToWrite.contains(f.getPath()))
+                        .collect(Collectors.toList()))
+                .unchangedFiles(unchangedFiles)
+                .ignoredFiles(ignoredFiles)
+                .conflicts(conflicts)
+                .manifestEntries(generatorFileEntryCollection)
+                .filesystemEntries(filesystemFileEntryMap)
+                .savedChecksumsComparable(savedChecksumsComparable)
+                .build();
+    }
 
-        writeGeneratedFiles(targetDirectory, generatorFileEntryCollection, generatorFilesName);
+    private static boolean isContentUnchanged(File targetDirectory, GeneratedFile generatedFile, ChecksumAlgorithm checksumAlgorithm) {
+        Path path = new File(targetDirectory, generatedFile.getPath()).toPath();
+        try {
+            if (!Files.isRegularFile(path) || Files.size(path) != generatedFile.getContentLength()) {
+                return false;
+            }
+            if (generatedFile.getPermissions() != null
+                    && (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                    || !Files.getPosixFilePermissions(path).equals(generatedFile.getPermissions()))) {
+                return false;
+            }
+            return ChecksumUtil.getChecksum(path, checksumAlgorithm).equals(generatedFile.getChecksum(checksumAlgorithm));
+        } catch (IOException e) {
+            log.debug("Could not compare content of: " + path, e);
+            return false;
+        }
     }
 
+    /**
+     * Applies the given plan to its target directory. When checksum validation is enabled and there are manual
+     * changes, it fails before any modification. The temporary files left by an interrupted generation are deleted
+     * from the directories of the generated and recorded files first.
+     */
+    public static void applySyncPlan(SyncPlan plan) {
+        WriteDirectoryArgument args = plan.getArgument();
+        File targetDirectory = args.targetDirectory;
+
+        if (plan.isBlocked()) {
+            throw new IllegalStateException("There are manual changes in the generated files.\n" +
+                    "Please discard the changes, delete file or put them to .generator-ignore:\n\t" +
+                    String.join("\n\t", plan.getConflicts()));
+        }
+
+        AtomicFileWriter writer = new AtomicFileWriter(args.durableWrites);
+        deleteStaleTempFiles(plan, writer);
+        GeneratorExecutors.forEach(args.ioExecutor, plan.getFilesToDelete(), f -> {
+            try {
+                writer.delete(new File(targetDirectory, f).toPath());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not delete file: " + new File(targetDirectory, f).getAbsolutePath(), e);
+            }
+        });
+        GeneratorExecutors.forEach(args.ioExecutor, plan.getFilesToWrite(), f -> writeFile(targetDirectory, writer, f));
+        writer.syncDirectories();
+
+        if (args.statBasedValidation && plan.isSavedChecksumsComparable()) {
+            // The stat data is kept only for the files which are not written and have the recorded content. The written
+            // files are modified recently, their stat data is recorded on the next run.
+            Set<String> unchangedFiles = new HashSet<>(plan.getUnchangedFiles());
+            plan.getManifestEntries().stream()
+                    .filter(f -> unchangedFiles.contains(f.getPath()))
+                    .forEach(f -> {
+                        GeneratorFileEntry filesystemEntry = plan.getFilesystemEntries().get(f.getPath());
+                        if (filesystemEntry != null && filesystemEntry.getChecksum().equals(f.getChecksum())) {
+                            f.copyStat(filesystemEntry);
+                        }
+                    });
+        }
+
+        GeneratorManifest.generatorManifest()
+                .checksumAlgorithm(args.checksumAlgorithm)
+                .entries(plan.getManifestEntries())
+                .build()
+                .write(targetDirectory, args.generatorFilesName, writer);
+        writer.syncDirectories();
+    }
+
+    private static void deleteStaleTempFiles(SyncPlan plan, AtomicFileWriter writer) {
+        Path targetDirectory = plan.getArgument().targetDirectory.toPath().toAbsolutePath();
+        Set<Path> directories = new TreeSet<>();
+        directories.add(targetDirectory);
+        Stream.of(plan.getManifestEntries().stream().map(GeneratorFileEntry::getPath),
+                        plan.getFilesToDelete().stream(),
+                        plan.getFilesystemEntries().keySet().stream())
+                .flatMap(s -> s)
+                .map(path -> targetDirectory.resolve(path).getParent())
+                .forEach(directories::add);
+        GeneratorExecutors.forEach(plan.getArgument().ioExecutor, directories, directory -> {
+            try {
+                int deleted = writer.deleteStaleTempFiles(directory);
+                if (deleted > 0) {
+                    log.info("Deleted " + deleted + " temporary file(s) of an interrupted generation in: " + directory);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not delete temporary files in: " + directory, e);
+            }
+        });
+    }
 
     public static <D> Consumer<D> getDirectoryChecksumCalculatorForActor(
             Function<D, File> actorTypeTargetDirectoryResolver,
@@ -218,54 +461,53 @@ public class ModelGenerator<M> {
     }
 
     public static void recalculateChecksumToDirectory(File targetDirectory, String generatorFilesName) {
-        Collection<GeneratorFileEntry> savedFileEntryCollection = readGeneratedFiles(targetDirectory, generatorFilesName);
-        Collection<GeneratorFileEntry> filesystemFileEntryCollection = readFilesystemEntries(targetDirectory, savedFileEntryCollection);
-        writeGeneratedFiles(targetDirectory, filesystemFileEntryCollection, generatorFilesName);
+        recalculateChecksumToDirectory(targetDirectory, generatorFilesName, false);
+    }
+
+    /**
+     * Recalculates the checksums of the manifest from the files of the directory. When statBasedValidation is set,
+     * the files with unchanged stat data are not hashed again, and the stat data is stored in the manifest.
+     */
+    public static void recalculateChecksumToDirectory(File targetDirectory, String generatorFilesName, boolean statBasedValidation) {
+        GeneratorManifest savedManifest = GeneratorManifest.read(targetDirectory, generatorFilesName);
+        Collection<GeneratorFileEntry> filesystemFileEntryCollection = readFilesystemEntries(targetDirectory, savedManifest.getEntries(),
+                GeneratorExecutors.getDefaultIoExecutor(), savedManifest.getChecksumAlgorithm(), statBasedValidation);
+        GeneratorManifest.generatorManifest()
+                .checksumAlgorithm(savedManifest.getChecksumAlgorithm())
+                .entries(filesystemFileEntryCollection)
+                .build()
+                .write(targetDirectory, generatorFilesName);
     }
 
     public static List<GeneratorFileEntry> getGeneratorFiles(Collection<GeneratedFile> generatedFiles) {
+        return getGeneratorFiles(generatedFiles, ChecksumAlgorithm.MD5);
+    }
+
+    public static List<GeneratorFileEntry> getGeneratorFiles(Collection<GeneratedFile> generatedFiles, ChecksumAlgorithm checksumAlgorithm) {
         ArrayList<GeneratorFileEntry> result = new ArrayList();
         result.addAll(generatedFiles.stream().map(
                         f -> GeneratorFileEntry.generatorFileEntry()
                                 .path(f.getPath())
-                                .checksum(ChecksumUtil.getMD5(f.getContent())).build())
+                                .checksum(f.getChecksum(checksumAlgorithm))
+                                .fingerprint(f.getFingerprint()).build())
                 .collect(Collectors.toList()));
 
         Collections.sort(result);
         return result;
     }
 
-    private static void writeFile(File targetDirectory, GeneratorIgnore generatorIgnore, GeneratedFile generatedFile) {
+    private static void writeFile(File targetDirectory, AtomicFileWriter writer, GeneratedFile generatedFile) {
         File outFile = new File(targetDirectory, generatedFile.getPath());
-        outFile.getParentFile().mkdirs();
+        if (generatedFile.getContent() == null && outFile.toPath().equals(generatedFile.getContentFile())) {
+            // Reused by incremental generation, the content is already there
+            return;
+        }
 
         try {
             if (outFile.exists()) {
                 log.debug("File already exists, overwrite: " + outFile.getAbsolutePath());
-                outFile.delete();
-            }
-            ByteStreams.copy(new ByteArrayInputStream(generatedFile.getContent()), new FileOutputStream(outFile));
-            if (generatedFile.getPermissions() != null) {
-                if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
-                    Files.setPosixFilePermissions(outFile.toPath(), generatedFile.getPermissions());
-                } else {
-                    if (generatedFile.getPermissions().contains(PosixFilePermission.OWNER_EXECUTE)) {
-                        outFile.setExecutable(true,
-                                !(generatedFile.getPermissions().contains(PosixFilePermission.GROUP_EXECUTE)
-                                        || generatedFile.getPermissions().contains(PosixFilePermission.OTHERS_EXECUTE)));
-                    }
-                    if (generatedFile.getPermissions().contains(PosixFilePermission.OWNER_READ)) {
-                        outFile.setReadable(true,
-                                !(generatedFile.getPermissions().contains(PosixFilePermission.GROUP_READ)
-                                        || generatedFile.getPermissions().contains(PosixFilePermission.OTHERS_READ)));
-                    }
-                    if (generatedFile.getPermissions().contains(PosixFilePermission.OWNER_WRITE)) {
-                        outFile.setReadable(true,
-                                !(generatedFile.getPermissions().contains(PosixFilePermission.GROUP_WRITE)
-                                        || generatedFile.getPermissions().contains(PosixFilePermission.OTHERS_WRITE)));
-                    }
-                }
             }
+            writer.write(outFile.toPath(), generatedFile::writeContentTo, generatedFile.getPermissions());
         } catch (Exception exception) {
             log.error("Could not write file: " + outFile.getAbsolutePath());
             throw new RuntimeException(exception);
@@ -273,46 +515,62 @@ public class ModelGenerator<M> {
     }
 
     public static void writeGeneratedFiles(File targetDirectory, Collection<GeneratorFileEntry> generatorFileEntryCollection, String generatedFileName) {
-        try {
-            targetDirectory.mkdirs();
-            Files.write(Paths.get(targetDirectory.getAbsolutePath(), generatedFileName),
-                    String.join(NEWLINE, generatorFileEntryCollection.stream().map(f -> f.toString()).collect(Collectors.toList()))
-                            .getBytes(StandardCharsets.UTF_8));
-        } catch (IOException e) {
-            throw new RuntimeException("Could not write file: "
-                    + Paths.get(targetDirectory.getAbsolutePath(), generatedFileName).toFile().getAbsolutePath(), e);
-        }
+        GeneratorManifest.generatorManifest()
+                .entries(generatorFileEntryCollection)
+                .build()
+                .write(targetDirectory, generatedFileName);
     }
 
     public static Collection<GeneratorFileEntry> readFilesystemEntries(File targetDirectory, Collection<GeneratorFileEntry> generatorFileEntryCollection) {
+        return readFilesystemEntries(targetDirectory, generatorFileEntryCollection, GeneratorExecutors.getDefaultIoExecutor());
+    }
+
+    public static Collection<GeneratorFileEntry> readFilesystemEntries(File targetDirectory, Collection<GeneratorFileEntry> generatorFileEntryCollection, Executor ioExecutor) {
+        return readFilesystemEntries(targetDirectory, generatorFileEntryCollection, ioExecutor, ChecksumAlgorithm.MD5);
+    }
 
-        return generatorFileEntryCollection.parallelStream().map(f -> {
+    public static Collection<GeneratorFileEntry> readFilesystemEntries(File targetDirectory, Collection<GeneratorFileEntry> generatorFileEntryCollection,
+                                                                       Executor ioExecutor, ChecksumAlgorithm checksumAlgorithm) {
+        return readFilesystemEntries(targetDirectory, generatorFileEntryCollection, ioExecutor, checksumAlgorithm, false);
+    }
+
+    /**
+     * Reads the checksums of the files of the given entries. When statBasedValidation is set and the stat data of
+     * the file matches the stat data of the entry, the checksum of the entry is used without reading the file.
+     */
+    public static Collection<GeneratorFileEntry> readFilesystemEntries(File targetDirectory, Collection<GeneratorFileEntry> generatorFileEntryCollection,
+                                                                       Executor ioExecutor, ChecksumAlgorithm checksumAlgorithm,
+                                                                       boolean statBasedValidation) {
+
+        return GeneratorExecutors.map(ioExecutor, generatorFileEntryCollection, f -> {
             File file = new File(targetDirectory, f.getPath());
-            if (file.exists()) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                return null;
+            }
+            if (statBasedValidation && f.isStatMatching(attributes)) {
                 GeneratorFileEntry currentFileEntry = GeneratorFileEntry.generatorFileEntry()
-                        .checksum(ChecksumUtil.getMD5(file.toPath()))
+                        .checksum(f.getChecksum())
                         .path(f.getPath())
                         .build();
+                currentFileEntry.copyStat(f);
                 return currentFileEntry;
             }
-            return null;
-        }).filter(f -> f != null).collect(Collectors.toList());
+            GeneratorFileEntry currentFileEntry = GeneratorFileEntry.generatorFileEntry()
+                    .checksum(ChecksumUtil.getChecksum(file.toPath(), checksumAlgorithm))
+                    .path(f.getPath())
+                    .build();
+            if (statBasedValidation) {
+                currentFileEntry.recordStat(attributes);
+            }
+            return currentFileEntry;
+        }).stream().filter(f -> f != null).collect(Collectors.toList());
     }
 
     public static Collection<GeneratorFileEntry> readGeneratedFiles(File targetDirectory, String generatedFileName) {
-        try {
-            if (Paths.get(targetDirectory.getAbsolutePath(), generatedFileName).toFile().exists()) {
-                List<String> files = Files.readAllLines(Paths.get(targetDirectory.getAbsolutePath(), generatedFileName),
-                        StandardCharsets.UTF_8);
-                List<GeneratorFileEntry> entries = files.stream().map(s -> GeneratorFileEntry.fromString(s)).collect(Collectors.toList());
-                return entries;
-            } else {
-                return Collections.emptyList();
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Could not read file: "
-                    + Paths.get(targetDirectory.getAbsolutePath(), generatedFileName).toFile().getAbsolutePath(), e);
-        }
+        return GeneratorManifest.read(targetDirectory, generatedFileName).getEntries();
     }
 
     public static void generateToDirectory(GeneratorParameter.GeneratorParameterBuilder builder) throws Exception {
@@ -320,6 +578,15 @@ public class ModelGenerator<M> {
     }
 
     public static <T> void generateToDirectory(GeneratorParameter<T> parameter) throws Exception {
+        generateToDirectoryWithReport(parameter);
+    }
+
+    /**
+     * Generates and synchronizes the target directories, and returns the applied plans. When
+     * {@link GeneratorParameter#isDryRun()} is set, the plans are only calculated, the target directories are not
+     * modified and the manual changes are reported as conflicts instead of failing.
+     */
+    public static <T> SyncReport generateToDirectoryWithReport(GeneratorParameter<T> parameter) throws Exception {
         final AtomicBoolean loggerToBeClosed = new AtomicBoolean(false);
         Logger log = Objects.requireNonNullElseGet(parameter.log,
                                                 () -> {
@@ -329,17 +596,40 @@ public class ModelGenerator<M> {
 
         try {
             GeneratorResult<T> result = parameter.performExecutor.apply(parameter);
+            if (parameter.generatorContext != null) {
+                parameter.generatorContext.reportSpelCompilationFallbacks();
+                parameter.generatorContext.reportValueResolverStatistics();
+            }
 
+            List<WriteDirectoryArgument> arguments = new ArrayList<>();
             result.generatedByDiscriminator
                     .entrySet()
                     .stream()
                     .filter(e -> parameter.getDiscriminatorPredicate().test(e.getKey()))
-                    .forEach(getDirectoryWriterForActor(
-                            parameter.getDiscriminatorTargetDirectoryResolver(),
-                            parameter.getDiscriminatorTargetNameResolver(),
-                            parameter.isValidateChecksum(),
-                            log));
-            getDirectoryWriter(parameter.targetDirectoryResolver, parameter.isValidateChecksum(), log).accept(result.generated);
+                    .forEach(e -> arguments.add(createWriteDirectoryArgumentBuilder(parameter)
+                            .generatedFiles(e.getValue())
+                            .targetDirectory(parameter.getDiscriminatorTargetDirectoryResolver().apply(e.getKey()))
+                            .generatorFilesName(GENERATED_FILES + "-" + parameter.getDiscriminatorTargetNameResolver().apply(e.getKey()))
+                            .build()));
+            arguments.add(createWriteDirectoryArgumentBuilder(parameter)
+                    .generatedFiles(result.generated)
+                    .targetDirectory(parameter.targetDirectoryResolver.get())
+                    .build());
+
+            List<SyncPlan> plans = new ArrayList<>();
+            for (WriteDirectoryArgument argument : arguments) {
+                SyncPlan plan = createSyncPlan(argument);
+                if (parameter.isDryRun()) {
+                    log.info("Dry run, " + plan.getSummary());
+                } else {
+                    applySyncPlan(plan);
+                }
+                plans.add(plan);
+            }
+            return SyncReport.syncReport()
+                    .plans(plans)
+                    .dryRun(parameter.isDryRun())
+                    .build();
         } finally {
             if (loggerToBeClosed.get()) {
                 try {
@@ -354,26 +644,33 @@ public class ModelGenerator<M> {
         }
     }
 
+    private static WriteDirectoryArgument.WriteDirectoryArgumentBuilder createWriteDirectoryArgumentBuilder(GeneratorParameter<?> parameter) {
+        return WriteDirectoryArgument.writeDirectoryArgument()
+                .validateChecksum(parameter.isValidateChecksum())
+                .ioExecutor(parameter.getIoExecutor())
+                .checksumAlgorithm(parameter.getChecksumAlgorithm())
+                .statBasedValidation(parameter.isStatBasedValidation())
+                .durableWrites(parameter.isDurableWrites())
+                .skipUnchangedContent(parameter.isSkipUnchangedContent());
+    }
+
     public static <T> void recalculateChecksumToDirectory(GeneratorParameter<T> parameter, Collection<T> discriminators) {
-        discriminators.forEach(getDirectoryChecksumCalculatorForActor(
-                parameter.getDiscriminatorTargetDirectoryResolver(),
-                parameter.getDiscriminatorTargetNameResolver()));
-        getDirectoryChecksumCalculator(parameter.targetDirectoryResolver).run();
+        discriminators.forEach(d -> recalculateChecksumToDirectory(
+                parameter.getDiscriminatorTargetDirectoryResolver().apply(d),
+                GENERATED_FILES + "-" + parameter.getDiscriminatorTargetNameResolver().apply(d),
+                parameter.isStatBasedValidation()));
+        recalculateChecksumToDirectory(parameter.targetDirectoryResolver.get(), GENERATED_FILES, parameter.isStatBasedValidation());
     }
 
 
+    /**
+     * Returns the generated files as zip. The archive is built in memory, use {@link GeneratedZipWriter} to write it
+     * directly to a stream or file.
+     */
     @SneakyThrows(IOException.class)
     public static InputStream getGeneratedFilesAsZip(Collection<GeneratedFile> generatedFiles) {
         ByteArrayOutputStream generatedZip = new ByteArrayOutputStream();
-        ZipOutputStream zipOutputStream = new ZipOutputStream(generatedZip);
-        for (GeneratedFile generatedFile : generatedFiles) {
-            zipOutputStream.putNextEntry(new ZipEntry(generatedFile.getPath()));
-            zipOutputStream.write(generatedFile.getContent(), 0, generatedFile.getContent().length);
-            zipOutputStream.flush();
-            zipOutputStream.closeEntry();
-        }
-        zipOutputStream.flush();
-        zipOutputStream.close();
+        GeneratedZipWriter.generatedZipWriter().build().write(generatedFiles, generatedZip);
         return new ByteArrayInputStream(generatedZip.toByteArray());
     }
 
@@ -400,6 +697,30 @@ public class ModelGenerator<M> {
         @Builder.Default
         Supplier<Class<?>> generatorTemplateMixin = null;
 
+        @Builder.Default
+        GeneratedContentSpool contentSpool = null;
+
+        /**
+         * When it is set, the template roots are indexed on context creation, so the template resolution
+         * does not open the resources. See {@link TemplateRootIndex}.
+         */
+        @Builder.Default
+        boolean indexTemplateRoots = false;
+
+        /**
+         * The compiler mode of the template expressions. When it is IMMEDIATE or MIXED, the expressions are compiled
+         * to bytecode after the first evaluation. See {@link SpelExpressionCache}.
+         */
+        @Builder.Default
+        SpelCompilerMode spelCompilerMode = SpelCompilerMode.OFF;
+
+        /**
+         * The class loader of the compiled expressions, it has to see the model and helper classes. When it is not set,
+         * the context class loader of the thread which creates the context is used.
+         */
+        @Builder.Default
+        ClassLoader spelCompilerClassLoader = null;
+
     }
 
     public static ModelGeneratorContext createGeneratorContext(CreateGeneratorContextArgument args) throws IOException {
@@ -427,6 +748,10 @@ public class ModelGenerator<M> {
             throw new IllegalArgumentException("Minimum one URI is mandatory for templates");
         }
 
+        if (args.indexTemplateRoots && urlTemplateLoader instanceof ChainedURLTemplateLoader) {
+            ((ChainedURLTemplateLoader) urlTemplateLoader).indexRoots();
+        }
+
 
         GeneratorModel generatorModel = null;
 
@@ -475,25 +800,15 @@ public class ModelGenerator<M> {
                 .helpers(helpersPar)
                 .valueResolvers(valueResolversPar)
                 .contextAccessor(args.contextAccessor)
+                .contentSpool(args.contentSpool)
+                .spelCompilerMode(args.spelCompilerMode)
+                .spelCompilerClassLoader(args.spelCompilerClassLoader)
                 .build();
 
         return modelGeneratorContext;
     }
 
-
-    @SneakyThrows
     public static void callBindContextForTypeIfCan(ModelGeneratorContext generatorContext, Class type, Object value) {
-        if (generatorContext.getContextAccessor() != null) {
-            Optional<Method> callMethod = Arrays.stream(generatorContext.getContextAccessor().getMethods()).filter(m ->
-                    m.getName().equals("bindContext") &&
-                            Modifier.isPublic(m.getModifiers()) &&
-                            Modifier.isStatic(m.getModifiers()) &&
-                            m.getParameters().length == 1 &&
-                            type.isAssignableFrom(m.getParameters()[0].getType())
-            ).findFirst();
-            if (callMethod.isPresent()) {
-                callMethod.get().invoke(null, value);
-            }
-        }
+        generatorContext.bindContext(type, value);
     }
 }
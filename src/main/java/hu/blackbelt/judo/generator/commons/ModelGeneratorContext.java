@@ -22,6 +22,7 @@ package hu.blackbelt.judo.generator.commons;
 
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Helper;
+import com.github.jknack.handlebars.Template;
 import com.github.jknack.handlebars.ValueResolver;
 import com.github.jknack.handlebars.cache.HighConcurrencyTemplateCache;
 import com.github.jknack.handlebars.cache.TemplateCache;
@@ -29,16 +30,40 @@ import com.github.jknack.handlebars.helper.ConditionalHelpers;
 import com.github.jknack.handlebars.helper.StringHelpers;
 import com.github.jknack.handlebars.io.URLTemplateLoader;
 import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
 
 /**
  * This class holds the state over a generation process. The individual generation for templates uses
@@ -64,9 +89,60 @@ public class ModelGeneratorContext {
     @Getter
     private final Class contextAccessor;
 
+    /**
+     * Binds the context of the templates, when it is not set and the context accessor implements {@link ContextBinder},
+     * it is an instance of the context accessor.
+     */
+    @Getter
+    private final ContextBinder contextBinder;
+
+    private final Map<Class<?>, Optional<MethodHandle>> bindContextHandles = new ConcurrentHashMap<>();
+
+    /**
+     * When it is set, the generated files are streamed into the spool instead of holding
+     * the content in memory.
+     */
+    @Getter
+    private final GeneratedContentSpool contentSpool;
+
+    /**
+     * The compiler mode of the SpringEL expressions of the templates. See {@link SpelExpressionCache}.
+     */
+    @Getter
+    private final SpelCompilerMode spelCompilerMode;
+
+    /**
+     * The parsed SpringEL expressions of the context.
+     */
+    @Getter
+    private final SpelExpressionCache spelExpressionCache;
 
     TemplateCache templateCache = new HighConcurrencyTemplateCache();
 
+    /**
+     * The Handlebars instance shared by all templates of the context. Helpers are registered once, and it is not
+     * exposed, so it is not modified after the context is created and it can be used concurrently. The templates are
+     * compiled with {@link #compile(String)} and {@link #compileInline(String)}.
+     */
+    private final Handlebars handlebars;
+
+    /**
+     * The time spent to create the shared Handlebars instance.
+     */
+    @Getter
+    private final Duration handlebarsInitializationTime;
+
+    private final Supplier<ValueResolverChain> valueResolverChain =
+            Suppliers.memoize(() -> ValueResolverChain.withDefaultValueResolvers(getValueResolvers()));
+
+    private final Supplier<Map<String, Method>> helperFunctions = Suppliers.memoize(this::collectHelperFunctions);
+
+    private final ReflectivePropertyAccessor propertyAccessor = new ReflectivePropertyAccessor();
+
+    private final Queue<StandardEvaluationContext> evaluationContextPool = new ConcurrentLinkedQueue<>();
+
+    private final Supplier<String> helpersChecksum = Suppliers.memoize(this::calculateHelpersChecksum);
+
 
     @Builder
     public ModelGeneratorContext(
@@ -75,7 +151,11 @@ public class ModelGeneratorContext {
             @NonNull GeneratorModel generatorModel,
             Collection<Class> helpers,
             Collection<ValueResolver> valueResolvers,
-            Class contextAccessor) {
+            Class contextAccessor,
+            ContextBinder contextBinder,
+            GeneratedContentSpool contentSpool,
+            SpelCompilerMode spelCompilerMode,
+            ClassLoader spelCompilerClassLoader) {
 
         this.templateLoader = templateLoader;
         this.generatorModel = generatorModel;
@@ -91,8 +171,46 @@ public class ModelGeneratorContext {
             this.valueResolvers = valueResolvers;
         }
         this.contextAccessor = contextAccessor;
+        if (contextBinder == null && contextAccessor != null && ContextBinder.class.isAssignableFrom(contextAccessor)) {
+            try {
+                this.contextBinder = (ContextBinder) contextAccessor.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Could not create context binder: " + contextAccessor.getName(), e);
+            }
+        } else {
+            this.contextBinder = contextBinder;
+        }
+        this.contentSpool = contentSpool;
+        this.spelCompilerMode = spelCompilerMode != null ? spelCompilerMode : SpelCompilerMode.OFF;
+        this.spelExpressionCache = new SpelExpressionCache(this.spelCompilerMode, spelCompilerClassLoader != null
+                ? spelCompilerClassLoader : Thread.currentThread().getContextClassLoader());
+
+        long start = System.nanoTime();
+        this.handlebars = createHandlebars();
+        this.handlebarsInitializationTime = Duration.ofNanos(System.nanoTime() - start);
+        log.debug("Handlebars initialized with " + this.helpers.size() + " helper class(es) in "
+                + handlebarsInitializationTime.toMillis() + " ms");
     }
 
+    /**
+     * Compiles the template of the given name with the shared Handlebars instance of the context.
+     */
+    public Template compile(String templateName) throws IOException {
+        return handlebars.compile(templateName);
+    }
+
+    /**
+     * Compiles the given template text with the shared Handlebars instance of the context.
+     */
+    public Template compileInline(String template) throws IOException {
+        return handlebars.compileInline(template);
+    }
+
+    /**
+     * Creates a new Handlebars instance with all helpers registered. Templates of the context are compiled with the
+     * shared instance (see {@link #compile(String)}), so it is required only when a separate instance is needed,
+     * e.g. one with additional helpers.
+     */
     public Handlebars createHandlebars() {
         Handlebars handlebars = new Handlebars();
         handlebars.with(templateLoader).with(templateCache);
@@ -107,25 +225,155 @@ public class ModelGeneratorContext {
         }
 
         handlebars.registerHelper("times", (Helper<Integer>) (n, options) -> {
-            String accum = "";
-            for(Integer i = 0; i < n; ++i) {
-                accum += options.fn(i);
+            StringBuilder accum = new StringBuilder();
+            for (int i = 0; i < n; ++i) {
+                accum.append(options.fn(i));
             }
-            return accum;
+            return accum.toString();
         });
         return handlebars;
     }
 
+    /**
+     * Returns the checksum of the helper classes' bytecode. It changes when any of the helpers is changed,
+     * so it is used as part of the fingerprint in incremental generation. It is null when the bytecode of a helper
+     * cannot be read, then the generated files are not reused.
+     */
+    public String getHelpersChecksum() {
+        return helpersChecksum.get();
+    }
+
+    private String calculateHelpersChecksum() {
+        MessageDigest md = ChecksumUtil.createMD5Digest();
+        for (Class helper : helpers.stream().sorted(Comparator.comparing(Class::getName)).collect(Collectors.toList())) {
+            md.update(helper.getName().getBytes(StandardCharsets.UTF_8));
+            // The binary name is used, so the nested classes (Outer$Inner.class) are found too
+            String classFile = helper.getName().substring(helper.getName().lastIndexOf('.') + 1) + ".class";
+            try (InputStream is = helper.getResourceAsStream(classFile)) {
+                if (is == null) {
+                    log.warn("Could not read helper class: " + helper.getName() + ", incremental generation does not reuse files");
+                    return null;
+                }
+                md.update(is.readAllBytes());
+            } catch (IOException e) {
+                log.warn("Could not read helper class: " + helper.getName() + ", incremental generation does not reuse files", e);
+                return null;
+            }
+        }
+        return ChecksumUtil.format(md.digest());
+    }
+
+    /**
+     * Parses the given SpringEL expression with the compiler mode of the context. The parsed expressions are shared.
+     */
+    public Expression parseExpression(String expression) {
+        return spelExpressionCache.parseExpression(null, expression);
+    }
+
+    /**
+     * Parses the given SpringEL expression of the template, when the expressions are compiled, they are shared only
+     * inside the template.
+     */
+    public Expression parseExpression(GeneratorTemplate generatorTemplate, String expression) {
+        return spelExpressionCache.parseExpression(generatorTemplate, expression);
+    }
+
+    /**
+     * Logs and returns the expressions of the context which cannot be compiled in the compiler mode of the context.
+     */
+    public Collection<String> reportSpelCompilationFallbacks() {
+        return spelExpressionCache.reportCompilationFallbacks();
+    }
+
+    /**
+     * Returns the chain of the default Handlebars value resolvers and the value resolvers of the context. It is
+     * opt-in: the generators can set it as the resolver of the Handlebars contexts they build
+     * (<code>Context.newBuilder(model).resolver(generatorContext.getValueResolverChain())</code>), and
+     * {@link ParallelGeneratorExecutor} sets it when it is built with valueResolverChain.
+     * See {@link ValueResolverChain}.
+     */
+    public ValueResolverChain getValueResolverChain() {
+        return valueResolverChain.get();
+    }
+
+    /**
+     * Logs the statistics of the {@link StaticMethodValueResolver} value resolvers and the value resolver chain.
+     */
+    public void reportValueResolverStatistics() {
+        valueResolvers.stream()
+                .filter(r -> r instanceof StaticMethodValueResolver)
+                .forEach(r -> ((StaticMethodValueResolver) r).reportStatistics());
+        getValueResolverChain().reportStatistics();
+    }
+
+    /**
+     * Binds the value with the context binder, or with the public static {@code bindContext} method of the context
+     * accessor which has one parameter of the given type (or its subtype). The method is looked up once per type.
+     */
+    @SneakyThrows
+    public void bindContext(Class<?> type, Object value) {
+        if (contextBinder != null) {
+            contextBinder.bindContext(type, value);
+        } else if (contextAccessor != null) {
+            Optional<MethodHandle> handle = bindContextHandles.computeIfAbsent(type, this::findBindContextHandle);
+            if (handle.isPresent()) {
+                handle.get().invokeExact(value);
+            }
+        }
+    }
+
+    private Optional<MethodHandle> findBindContextHandle(Class<?> type) {
+        return Arrays.stream(contextAccessor.getMethods()).filter(m ->
+                m.getName().equals("bindContext") &&
+                        Modifier.isPublic(m.getModifiers()) &&
+                        Modifier.isStatic(m.getModifiers()) &&
+                        m.getParameters().length == 1 &&
+                        type.isAssignableFrom(m.getParameters()[0].getType())
+        ).findFirst().map(m -> {
+            try {
+                return MethodHandles.publicLookup().unreflect(m).asType(MethodType.methodType(void.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Could not access: " + m, e);
+            }
+        });
+    }
+
+    /**
+     * Creates an evaluation context with the helper functions. The function table is collected once per context,
+     * and the property accessor is shared by the evaluation contexts, so it is cheap to create.
+     */
     public StandardEvaluationContext createSpringEvaluationContext() {
-        StandardEvaluationContext springElContext = new StandardEvaluationContext();
+        return new HelperEvaluationContext(helperFunctions.get(), Collections.singletonList(propertyAccessor));
+    }
+
+    /**
+     * Returns an evaluation context from the pool, or creates a new one. It has to be returned with
+     * {@link #releaseSpringEvaluationContext(StandardEvaluationContext)} when it is not used anymore.
+     */
+    public StandardEvaluationContext acquireSpringEvaluationContext() {
+        StandardEvaluationContext evaluationContext = evaluationContextPool.poll();
+        return evaluationContext != null ? evaluationContext : createSpringEvaluationContext();
+    }
+
+    /**
+     * Returns the evaluation context to the pool, its variables and root object are removed.
+     */
+    public void releaseSpringEvaluationContext(StandardEvaluationContext evaluationContext) {
+        if (evaluationContext instanceof HelperEvaluationContext) {
+            ((HelperEvaluationContext) evaluationContext).reset();
+            evaluationContextPool.offer(evaluationContext);
+        }
+    }
 
+    private Map<String, Method> collectHelperFunctions() {
+        Map<String, Method> functions = new LinkedHashMap<>();
         for (Class helper : helpers) {
             Arrays.stream(helper.getMethods()).filter(m ->
                             Modifier.isPublic(m.getModifiers()) &&
                                     Modifier.isStatic(m.getModifiers()))
-                    .forEach(m -> springElContext.registerFunction(m.getName(), m));
+                    .forEach(m -> functions.put(m.getName(), m));
 
         }
-        return springElContext;
+        return Collections.unmodifiableMap(functions);
     }
 }
@@ -0,0 +1,340 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.github.jknack.handlebars.Context;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Generic perform executor for {@link GeneratorParameter#getPerformExecutor()}. It evaluates the factory expressions
+ * of the templates of the generator model, and generates the files of the returned elements in parallel.
+ * <ul>
+ *     <li>The templates which are not discriminator based are evaluated with the model as factory root, the
+ *     discriminator based (actorTypeBased) templates are evaluated with every discriminator as factory root, and the
+ *     discriminator is set as the discriminatorVariable.</li>
+ *     <li>The element is set as `self`, the extra context variables of the parameter are set as variables in the
+ *     SpringEL and the template context.</li>
+ *     <li>Every worker thread has its own evaluation context, the number of the submitted but not finished
+ *     files is limited by the queueCapacity.</li>
+ *     <li>The order of the result is deterministic: the templates ordered by name, then the discriminators and
+ *     the elements in the order of their collections.</li>
+ * </ul>
+ */
+@Slf4j
+@Builder(builderMethodName = "parallelGeneratorExecutor")
+@Getter
+public final class ParallelGeneratorExecutor<T> implements Function<GeneratorParameter<T>, GeneratorResult<T>> {
+
+    public static final String SELF = "self";
+
+    public enum ExecutorType {
+        FORK_JOIN,
+        /**
+         * Virtual threads when the runtime supports them, otherwise fork join pool is used.
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * The root object of the factory expressions of the templates which are not discriminator based.
+     */
+    @NonNull
+    Supplier<Object> model;
+
+    @Builder.Default
+    Supplier<Collection<T>> discriminators = Collections::emptyList;
+
+    @Builder.Default
+    String discriminatorVariable = "actorType";
+
+    @Builder.Default
+    ExecutorType executorType = ExecutorType.FORK_JOIN;
+
+    @Builder.Default
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Builder.Default
+    int queueCapacity = 1024;
+
+    /**
+     * When set, {@link ModelGeneratorContext#getValueResolverChain()} is the resolver of the template contexts,
+     * otherwise the default Handlebars value resolvers are used.
+     */
+    @Builder.Default
+    boolean valueResolverChain = false;
+
+    @Builder.Default
+    IncrementalGeneration incrementalGeneration = null;
+
+    @Builder.Default
+    Function<T, IncrementalGeneration> discriminatorIncrementalGeneration = null;
+
+    @Override
+    public GeneratorResult<T> apply(GeneratorParameter<T> parameter) {
+        ModelGeneratorContext generatorContext = parameter.getGeneratorContext();
+        if (generatorContext == null) {
+            throw new IllegalArgumentException("Generator context is mandatory");
+        }
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parallelism and queue capacity have to be positive");
+        }
+        Logger logger = Objects.requireNonNullElse(parameter.getLog(), log);
+        Map<String, ?> extraVariables = parameter.getExtraContextVariables().get();
+        Collection<T> discriminatorValues = discriminators.get();
+        Object modelValue = model.get();
+
+        StandardEvaluationContext factoryContext = createEvaluationContext(generatorContext, extraVariables);
+        ThreadLocal<StandardEvaluationContext> evaluationContexts =
+                ThreadLocal.withInitial(() -> createEvaluationContext(generatorContext, extraVariables));
+
+        List<GenerationTask> tasks = new ArrayList<>();
+        Semaphore queue = new Semaphore(queueCapacity);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        // The workers do not inherit the context class loader (e.g. the class realm of a Maven plugin), it is set for
+        // the tasks, so the type references of the expressions are resolved the same way as in sequential generation
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = createExecutorService();
+        long start = System.nanoTime();
+        try {
+            try {
+                generate(generatorContext, factoryContext, evaluationContexts, extraVariables, discriminatorValues, modelValue,
+                        logger, contextClassLoader, executor, queue, failure, tasks);
+            } catch (RuntimeException e) {
+                // The queued tasks are skipped, the running ones are waited for before the failure is thrown
+                if (!failure.compareAndSet(null, e)) {
+                    failure.get().addSuppressed(e);
+                }
+            }
+            // All permits are available again when every submitted task is finished
+            queue.acquireUninterruptibly(queueCapacity);
+        } finally {
+            executor.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        logger.debug("Generated " + tasks.size() + " file(s) with " + executorType + " executor in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        Map<T, List<GeneratedFile>> generatedByDiscriminator = new LinkedHashMap<>();
+        discriminatorValues.forEach(d -> generatedByDiscriminator.put(d, new ArrayList<>()));
+        List<GeneratedFile> generated = new ArrayList<>();
+        for (GenerationTask task : tasks) {
+            if (task.discriminator != null) {
+                generatedByDiscriminator.get(task.discriminator).add(task.result);
+            } else {
+                generated.add(task.result);
+            }
+        }
+        Map<T, Collection<GeneratedFile>> resultByDiscriminator = new LinkedHashMap<>();
+        generatedByDiscriminator.forEach((d, files) -> resultByDiscriminator.put(d, new CopyOnWriteArrayList<>(files)));
+        return GeneratorResult.<T>generatorResult()
+                .generatedByDiscriminator(resultByDiscriminator)
+                .generated(new CopyOnWriteArrayList<>(generated))
+                .build();
+    }
+
+    private void generate(ModelGeneratorContext generatorContext, StandardEvaluationContext factoryContext,
+                          ThreadLocal<StandardEvaluationContext> evaluationContexts, Map<String, ?> extraVariables,
+                          Collection<T> discriminatorValues, Object modelValue, Logger logger, ClassLoader contextClassLoader,
+                          ExecutorService executor, Semaphore queue, AtomicReference<RuntimeException> failure,
+                          List<GenerationTask> tasks) {
+        for (GeneratorTemplate generatorTemplate : getOrderedTemplates(generatorContext)) {
+            TemplateEvaulator templateEvaulator;
+            try {
+                templateEvaulator = generatorTemplate.getTemplateEvalulator(generatorContext, factoryContext);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not create template: " + generatorTemplate, e);
+            }
+            if (generatorTemplate.isActorTypeBased()) {
+                for (T discriminator : discriminatorValues) {
+                    factoryContext.setVariable(discriminatorVariable, discriminator);
+                    for (Object element : getElements(templateEvaulator, generatorTemplate, discriminator)) {
+                        submit(executor, queue, failure, contextClassLoader, tasks,
+                                new GenerationTask(generatorContext, evaluationContexts, extraVariables,
+                                        templateEvaulator, generatorTemplate, discriminator, element, logger));
+                    }
+                }
+                factoryContext.setVariable(discriminatorVariable, null);
+            } else {
+                for (Object element : getElements(templateEvaulator, generatorTemplate, modelValue)) {
+                    submit(executor, queue, failure, contextClassLoader, tasks,
+                            new GenerationTask(generatorContext, evaluationContexts, extraVariables,
+                                    templateEvaulator, generatorTemplate, null, element, logger));
+                }
+            }
+            if (failure.get() != null) {
+                break;
+            }
+        }
+    }
+
+    private void submit(ExecutorService executor, Semaphore queue, AtomicReference<RuntimeException> failure,
+                        ClassLoader contextClassLoader, List<GenerationTask> tasks, GenerationTask task) {
+        if (failure.get() != null) {
+            return;
+        }
+        queue.acquireUninterruptibly();
+        tasks.add(task);
+        try {
+            executor.execute(() -> {
+                Thread thread = Thread.currentThread();
+                ClassLoader workerClassLoader = thread.getContextClassLoader();
+                thread.setContextClassLoader(contextClassLoader);
+                try {
+                    if (failure.get() == null) {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, new RuntimeException(e));
+                } finally {
+                    thread.setContextClassLoader(workerClassLoader);
+                    queue.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            queue.release();
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private ExecutorService createExecutorService() {
+        if (executorType == ExecutorType.VIRTUAL_THREADS) {
+            ExecutorService executor = GeneratorExecutors.newVirtualThreadExecutor().orElse(null);
+            if (executor != null) {
+                return executor;
+            }
+            log.debug("Virtual threads are not supported, fork join pool is used");
+        }
+        return new ForkJoinPool(parallelism);
+    }
+
+    private static List<GeneratorTemplate> getOrderedTemplates(ModelGeneratorContext generatorContext) {
+        List<GeneratorTemplate> templates = new ArrayList<>(generatorContext.getGeneratorModel().getTemplates());
+        templates.removeIf(GeneratorTemplate::isExclude);
+        templates.sort(Comparator.comparing(GeneratorTemplate::getName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(GeneratorTemplate::getTemplateName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(GeneratorTemplate::getPathExpression, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return templates;
+    }
+
+    private static Collection<?> getElements(TemplateEvaulator templateEvaulator, GeneratorTemplate generatorTemplate, Object root) {
+        if (templateEvaulator.getFactoryExpression() == null) {
+            return Collections.singletonList(root);
+        }
+        Object elements = templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, root, Object.class);
+        if (elements == null) {
+            return Collections.emptyList();
+        } else if (elements instanceof Collection) {
+            return (Collection<?>) elements;
+        } else if (elements.getClass().isArray()) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < Array.getLength(elements); i++) {
+                list.add(Array.get(elements, i));
+            }
+            return list;
+        }
+        return Collections.singletonList(elements);
+    }
+
+    private static StandardEvaluationContext createEvaluationContext(ModelGeneratorContext generatorContext, Map<String, ?> extraVariables) {
+        StandardEvaluationContext evaluationContext = generatorContext.createSpringEvaluationContext();
+        extraVariables.forEach(evaluationContext::setVariable);
+        return evaluationContext;
+    }
+
+    private final class GenerationTask implements Runnable {
+        final ModelGeneratorContext generatorContext;
+        final ThreadLocal<StandardEvaluationContext> evaluationContexts;
+        final Map<String, ?> extraVariables;
+        final TemplateEvaulator templateEvaulator;
+        final GeneratorTemplate generatorTemplate;
+        final T discriminator;
+        final Object element;
+        final Logger logger;
+
+        GeneratedFile result;
+
+        GenerationTask(ModelGeneratorContext generatorContext, ThreadLocal<StandardEvaluationContext> evaluationContexts,
+                       Map<String, ?> extraVariables, TemplateEvaulator templateEvaulator, GeneratorTemplate generatorTemplate,
+                       T discriminator, Object element, Logger logger) {
+            this.generatorContext = generatorContext;
+            this.evaluationContexts = evaluationContexts;
+            this.extraVariables = extraVariables;
+            this.templateEvaulator = templateEvaulator;
+            this.generatorTemplate = generatorTemplate;
+            this.discriminator = discriminator;
+            this.element = element;
+            this.logger = logger;
+        }
+
+        @Override
+        public void run() {
+            StandardEvaluationContext evaluationContext = evaluationContexts.get();
+            evaluationContext.setVariable(SELF, element);
+            evaluationContext.setVariable(discriminatorVariable, discriminator);
+
+            Context.Builder contextBuilder = Context.newBuilder(element);
+            if (valueResolverChain) {
+                contextBuilder.resolver(generatorContext.getValueResolverChain());
+            }
+            extraVariables.forEach(contextBuilder::combine);
+            contextBuilder.combine(SELF, element);
+            if (discriminator != null) {
+                contextBuilder.combine(discriminatorVariable, discriminator);
+            }
+            generatorTemplate.evalToContextBuilder(templateEvaulator, contextBuilder, evaluationContext);
+
+            IncrementalGeneration incremental = incrementalGeneration;
+            if (discriminator != null) {
+                incremental = discriminatorIncrementalGeneration != null ? discriminatorIncrementalGeneration.apply(discriminator) : null;
+            }
+            result = ModelGenerator.generateFile(generatorContext, evaluationContext, templateEvaulator,
+                    generatorTemplate, contextBuilder, incremental, logger);
+        }
+    }
+}
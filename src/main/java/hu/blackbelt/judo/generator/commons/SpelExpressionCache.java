@@ -0,0 +1,135 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The parsed SpringEL expressions of a {@link ModelGeneratorContext}, so the same expression used by several
+ * templates or files is parsed once.
+ * <p>
+ * In {@link SpelCompilerMode#IMMEDIATE} and {@link SpelCompilerMode#MIXED} mode the expressions are compiled to
+ * bytecode after the first evaluation, against the types of that evaluation. In IMMEDIATE mode a compiled expression
+ * fails when it is evaluated on a different type, so in these modes the expressions are shared only inside a scope
+ * (the template), in OFF mode they are shared by all templates of the context. The compiled classes are defined in
+ * a child of the given class loader. The expressions which cannot be compiled keep running interpreted, they can be
+ * listed with {@link #reportCompilationFallbacks()}.
+ */
+@Slf4j
+public final class SpelExpressionCache {
+
+    private static final long MAXIMUM_EXPRESSIONS = 10000;
+
+    private static final Map<SpelCompilerMode, SpelExpressionParser> PARSERS = new EnumMap<>(SpelCompilerMode.class);
+
+    static {
+        for (SpelCompilerMode mode : SpelCompilerMode.values()) {
+            PARSERS.put(mode, new SpelExpressionParser(new SpelParserConfiguration(mode, null)));
+        }
+    }
+
+    @Getter
+    private final SpelCompilerMode mode;
+
+    private final SpelExpressionParser parser;
+
+    private final Cache<List<Object>, Expression> expressions = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_EXPRESSIONS)
+            .build();
+
+    public SpelExpressionCache(SpelCompilerMode mode, ClassLoader compilerClassLoader) {
+        this.mode = mode;
+        this.parser = mode == SpelCompilerMode.OFF ? PARSERS.get(mode)
+                : new SpelExpressionParser(new SpelParserConfiguration(mode, compilerClassLoader));
+    }
+
+    /**
+     * Returns the shared parser of the given compiler mode, which defines the compiled classes in the context
+     * class loader of the thread which compiles the expression.
+     */
+    public static SpelExpressionParser getParser(SpelCompilerMode mode) {
+        return PARSERS.get(mode);
+    }
+
+    /**
+     * Returns the parsed expression from the cache, or parses it. When the expressions are compiled, they are
+     * shared only with the same scope (compared by equals).
+     */
+    public Expression parseExpression(Object scope, String expression) {
+        try {
+            return expressions.get(Arrays.asList(mode == SpelCompilerMode.OFF ? null : scope, expression),
+                    () -> parser.parseExpression(expression));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalArgumentException("Could not parse expression: " + expression, e.getCause());
+        }
+    }
+
+    /**
+     * Lists the cached expressions which cannot be compiled to bytecode, so they are evaluated in interpreted mode.
+     * The expressions are not compiled by the report. Expressions not evaluated yet cannot be compiled, so it has to be
+     * called after the generation.
+     */
+    public Collection<String> reportCompilationFallbacks() {
+        Collection<String> fallbacks = new ArrayList<>();
+        if (mode == SpelCompilerMode.OFF) {
+            return fallbacks;
+        }
+        expressions.asMap().values().stream()
+                .filter(expression -> expression instanceof SpelExpression
+                        && !((SpelNodeImpl) ((SpelExpression) expression).getAST()).isCompilable())
+                .map(Expression::getExpressionString)
+                .distinct()
+                .forEach(fallbacks::add);
+        if (!fallbacks.isEmpty()) {
+            log.info(fallbacks.size() + " SpringEL expression(s) could not be compiled and evaluated in interpreted mode");
+            fallbacks.forEach(e -> log.debug("Interpreted SpringEL expression: " + e));
+        }
+        return fallbacks;
+    }
+
+    /**
+     * Removes all parsed expressions from the cache.
+     */
+    public void clear() {
+        expressions.invalidateAll();
+    }
+}
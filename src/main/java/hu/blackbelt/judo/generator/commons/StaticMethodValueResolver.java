@@ -21,93 +21,202 @@ package hu.blackbelt.judo.generator.commons;
  */
 
 import com.github.jknack.handlebars.ValueResolver;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+/**
+ * Resolves the properties of the templates with the public static methods of the subclass. A method is called
+ * when its name is the name of the property, and it has no parameter or its parameter is assignable from the
+ * context (by class or by interface). The most specific method is selected.
+ * <p>
+ * The methods are resolved once per context class and name, and called with method handles. When a method is presented
+ * but its parameter does not match the context, it is logged once, and the later lookups are counted
+ * (see {@link #reportStatistics()}).
+ * <p>
+ * {@link ValueResolverChain} skips the resolver for the context class and name when it did not resolve once, unless
+ * the subclass overrides {@link #resolve(Object, String)}. Such a subclass can opt in by overriding
+ * {@link #isClassDetermined()}.
+ */
 @Slf4j
 public abstract class StaticMethodValueResolver implements ValueResolver {
 
-    private CacheLoader<String, Collection<Method>> methodListLoaderByName = new CacheLoader<String, Collection<Method>>() {
+    private static final MethodType DISPATCH_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * The marker of the names which cannot be resolved for a context class, it returns {@link #UNRESOLVED}.
+     */
+    private static final MethodHandle UNRESOLVED_HANDLE =
+            MethodHandles.dropArguments(MethodHandles.constant(Object.class, UNRESOLVED), 0, Object.class);
+
+    private static final Dispatch UNRESOLVED_DISPATCH = new Dispatch(UNRESOLVED_HANDLE, null);
+
+    private final Map<String, List<Method>> methodsByName = Arrays.stream(getClass().getDeclaredMethods())
+            .filter(m -> Modifier.isPublic(m.getModifiers()))
+            .filter(m -> Modifier.isStatic(m.getModifiers()))
+            .collect(Collectors.groupingBy(Method::getName));
+
+    private final ClassValue<Map<String, Dispatch>> dispatchCache = new ClassValue<>() {
         @Override
-        public Collection<Method> load(String key) {
-            return getMethodListByName(key);
+        protected Map<String, Dispatch> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
         }
     };
 
-    private LoadingCache<String, Collection<Method>> methodListCacheByContextAndName = CacheBuilder.newBuilder().build(methodListLoaderByName);
+    private final boolean resolveOverridden = isResolveOverridden(getClass());
+
+    private final Map<String, LongAdder> mismatches = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
 
     @Override
     public Object resolve(Object context, String name) {
-        try {
-            AtomicReference<Method> method = getMethodByContextClassByName(context, name);
-            if (method.get() != null) {
-                if (context == null || method.get().getParameterCount() == 0) {
-                    return method.get().invoke(null);
-                } else if (method.get().getParameterCount() == 1) {
-                    return method.get().invoke(null, context);
-                }
+        if (!methodsByName.containsKey(name)) {
+            misses.increment();
+            return UNRESOLVED;
+        }
+        Class<?> contextClass = context != null ? context.getClass() : Void.class;
+        Dispatch dispatch = dispatchCache.get(contextClass).computeIfAbsent(name, n -> createDispatch(context, n));
+        if (dispatch.handle == UNRESOLVED_HANDLE) {
+            misses.increment();
+            if (dispatch.mismatches != null) {
+                dispatch.mismatches.increment();
             }
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            return UNRESOLVED;
+        }
+        hits.increment();
+        try {
+            return (Object) dispatch.handle.invokeExact(context);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
-        return UNRESOLVED;
+    }
 
+    /**
+     * Whether {@link #resolve(Object, String)} resolves or not depending only on the class of the context and the name.
+     * It is set when the subclass does not override {@link #resolve(Object, String)}. A subclass which overrides it
+     * can return true when its own lookups depend only on the class of the context and the name too.
+     */
+    public boolean isClassDetermined() {
+        return !resolveOverridden;
     }
 
-    private Collection<Method> getMethodListByName(String name) {
-        Class methodClazz = this.getClass();
-        Collection<Method> potentialMethods = Arrays.stream(methodClazz.getDeclaredMethods())
-                .filter(m -> m.getName().equals(name))
-                .filter(m -> Modifier.isPublic(m.getModifiers()))
-                .filter(m -> Modifier.isStatic(m.getModifiers())).collect(Collectors.toList());
-        return potentialMethods;
+    private static boolean isResolveOverridden(Class<?> type) {
+        try {
+            return type.getMethod("resolve", Object.class, String.class).getDeclaringClass() != StaticMethodValueResolver.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private AtomicReference<Method> getMethodByContextClassByName(Object context, String name) {
+    /**
+     * The number of the lookups resolved with a method.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
 
-        AtomicReference<Method> method = new AtomicReference<>(null);
-        AtomicReference<Class> contextClassRef = new AtomicReference<>(context.getClass());
-        Collection<Method> methods = null;
+    /**
+     * The number of the lookups which are not resolved (including the mismatches).
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of the lookups where a method is presented with the name, but its parameter does not match the
+     * context, by context class and name (in {@code class#name} format).
+     */
+    public Map<String, Long> getMismatchCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        mismatches.forEach((k, v) -> counts.put(k, v.sum()));
+        return counts;
+    }
+
+    /**
+     * Logs the mismatches with their counts and the hit / miss statistics.
+     */
+    public void reportStatistics() {
+        getMismatchCounts().forEach((k, v) ->
+                log.info("Method: " + k + " presented, but the argument number and/or type does not match " + v + " time(s)"));
+        log.debug(getClass().getName() + " resolved " + getHitCount() + ", unresolved " + getMissCount() + " lookup(s)");
+    }
+
+    private Dispatch createDispatch(Object context, String name) {
+        Method method = getMethodByContextClassByName(context, name);
+        if (method == null) {
+            if (isMismatchReported(context)) {
+                return new Dispatch(UNRESOLVED_HANDLE,
+                        mismatches.computeIfAbsent(context.getClass().getName() + "#" + name, k -> new LongAdder()));
+            }
+            return UNRESOLVED_DISPATCH;
+        }
         try {
-            methods = methodListCacheByContextAndName.get(name);
-        } catch (ExecutionException e) {
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (method.getParameterCount() == 0) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return new Dispatch(handle.asType(DISPATCH_TYPE), null);
+        } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
+    }
 
-        while (method.get() == null && contextClassRef.get() != null) {
-            methods.stream()
-                    .filter(m -> (m.getParameterCount() == 0 || m.getParameterCount() == 1 && m.getParameters()[0].getType().isAssignableFrom(contextClassRef.get())))
-                    .findFirst()
-                    .ifPresentOrElse(m -> method.set(m), () ->
-                            contextClassRef.set(contextClassRef.get().getSuperclass())
-                    );
+    private Method getMethodByContextClassByName(Object context, String name) {
+        List<Method> methods = methodsByName.get(name);
+        Method method = null;
+        if (context != null) {
+            // The most specific method with assignable parameter
+            for (Method candidate : methods) {
+                if (candidate.getParameterCount() == 1 && candidate.getParameterTypes()[0].isAssignableFrom(context.getClass())
+                        && (method == null || method.getParameterTypes()[0].isAssignableFrom(candidate.getParameterTypes()[0]))) {
+                    method = candidate;
+                }
+            }
+        }
+        if (method == null) {
+            method = methods.stream().filter(m -> m.getParameterCount() == 0).findFirst().orElse(null);
         }
 
-        if (!context.getClass().getName().equals("java.lang.Object")
-            && !(context instanceof Map)
-                && method.get() == null
-                && methods.stream().anyMatch(m -> m.getName().equals(name))) {
-            for (Method methodByName : methods.stream().filter(m -> m.getName().equals(name)).collect(Collectors.toList())) {
+        if (method == null && isMismatchReported(context)) {
+            for (Method methodByName : methods) {
                 String methodParameters = " Method parameter(s): \n\t" + Arrays.stream(methodByName.getParameters()).sequential()
                         .map(m -> m.getName() + ": " + m.getType().getName())
                         .collect(Collectors.joining("\n\t"));
+                // The value is not logged, the string representation of the model elements can be huge
                 log.warn("Method: " + name + " presented, but the argument number and/or type does not match. \nContext type: " + context.getClass().getName() +
-                        " Value: " + (context == null ? "null" : context.toString()) + methodParameters);
+                        methodParameters + "\nIt is logged once per context type, see reportStatistics() for the number of occurrences.");
             }
         }
         return method;
     }
 
+    private static boolean isMismatchReported(Object context) {
+        return context != null && !context.getClass().getName().equals("java.lang.Object") && !(context instanceof Map);
+    }
+
+    private static final class Dispatch {
+        final MethodHandle handle;
+        final LongAdder mismatches;
+
+        Dispatch(MethodHandle handle, LongAdder mismatches) {
+            this.handle = handle;
+            this.mismatches = mismatches;
+        }
+    }
+
     @Override
     public Object resolve(final Object context) {
         return UNRESOLVED;
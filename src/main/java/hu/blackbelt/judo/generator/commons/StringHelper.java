@@ -30,15 +30,25 @@ public class StringHelper extends StaticMethodValueResolver {
     @Override
     public Object resolve(Object context, String name) {
         if (context instanceof String) {
-            if ("firstToUpperCase".equals(name)) {
-                return capitalize((String) context);
-            } else if ("firstToLowerCase".equals(name)) {
-                return uncapitalize((String) context);
+            switch (name) {
+                case "firstToUpperCase":
+                    return capitalize((String) context);
+                case "firstToLowerCase":
+                    return uncapitalize((String) context);
+                default:
             }
         }
         return super.resolve(context, name);
     }
 
+    /**
+     * The overridden names are resolved by the class of the context.
+     */
+    @Override
+    public boolean isClassDetermined() {
+        return true;
+    }
+
     public static String lowerCase(String string) {
         return string.toLowerCase();
     }
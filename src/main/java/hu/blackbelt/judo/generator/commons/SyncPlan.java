@@ -0,0 +1,133 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes required to synchronize a target directory with the generated files. It is created with
+ * {@link ModelGenerator#createSyncPlan(ModelGenerator.WriteDirectoryArgument)} without touching the target directory,
+ * so it can be inspected or logged before it is applied with {@link ModelGenerator#applySyncPlan(SyncPlan)}.
+ * <p>
+ * The path lists are sorted.
+ */
+@Builder(builderMethodName = "syncPlan")
+@Getter
+public final class SyncPlan {
+
+    @NonNull
+    ModelGenerator.WriteDirectoryArgument argument;
+
+    /**
+     * The previously generated files which are not generated anymore.
+     */
+    @Builder.Default
+    List<String> filesToDelete = Collections.emptyList();
+
+    /**
+     * The generated files which are new or have different content than the last generation.
+     */
+    @Builder.Default
+    List<GeneratedFile> filesToWrite = Collections.emptyList();
+
+    /**
+     * The generated files which are the same as the last generation.
+     */
+    @Builder.Default
+    List<String> unchangedFiles = Collections.emptyList();
+
+    /**
+     * The files matched by the .generator-ignore files.
+     */
+    @Builder.Default
+    List<String> ignoredFiles = Collections.emptyList();
+
+    /**
+     * The files which are modified manually since the last generation.
+     */
+    @Builder.Default
+    List<String> conflicts = Collections.emptyList();
+
+    /**
+     * The entries of the manifest written when the plan is applied.
+     */
+    @Builder.Default
+    Collection<GeneratorFileEntry> manifestEntries = Collections.emptyList();
+
+    /**
+     * The entries of the files presented in the target directory, by path.
+     */
+    @Builder.Default
+    Map<String, GeneratorFileEntry> filesystemEntries = Collections.emptyMap();
+
+    /**
+     * Whether the saved checksums are calculated with the same algorithm as the generated ones.
+     */
+    boolean savedChecksumsComparable;
+
+    public File getTargetDirectory() {
+        return argument.getTargetDirectory();
+    }
+
+    /**
+     * Whether the plan cannot be applied because of manual changes.
+     */
+    public boolean isBlocked() {
+        return argument.isValidateChecksum() && !conflicts.isEmpty();
+    }
+
+    /**
+     * The size of the content of the files to write.
+     */
+    public long getBytesToWrite() {
+        long bytes = 0;
+        for (GeneratedFile generatedFile : filesToWrite) {
+            try {
+                bytes += generatedFile.getContentLength();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read content of: " + generatedFile.getPath(), e);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The size of the files to delete.
+     */
+    public long getBytesToDelete() {
+        return filesToDelete.stream().mapToLong(f -> new File(getTargetDirectory(), f).length()).sum();
+    }
+
+    public String getSummary() {
+        return getTargetDirectory().getAbsolutePath() + ": " + filesToWrite.size() + " to write, " + filesToDelete.size()
+                + " to delete, " + unchangedFiles.size() + " unchanged, " + ignoredFiles.size() + " ignored, "
+                + conflicts.size() + " conflicts";
+    }
+}
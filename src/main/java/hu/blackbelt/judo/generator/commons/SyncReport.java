@@ -0,0 +1,76 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The plans of the target directories of a generation (see {@link SyncPlan}). When the generation is a dry run
+ * (see {@link GeneratorParameter#isDryRun()}), the plans are not applied.
+ */
+@Builder(builderMethodName = "syncReport")
+@Getter
+public final class SyncReport {
+
+    @Builder.Default
+    List<SyncPlan> plans = Collections.emptyList();
+
+    boolean dryRun;
+
+    public int getWriteCount() {
+        return plans.stream().mapToInt(p -> p.getFilesToWrite().size()).sum();
+    }
+
+    public int getDeleteCount() {
+        return plans.stream().mapToInt(p -> p.getFilesToDelete().size()).sum();
+    }
+
+    public int getUnchangedCount() {
+        return plans.stream().mapToInt(p -> p.getUnchangedFiles().size()).sum();
+    }
+
+    public int getIgnoredCount() {
+        return plans.stream().mapToInt(p -> p.getIgnoredFiles().size()).sum();
+    }
+
+    public int getConflictCount() {
+        return plans.stream().mapToInt(p -> p.getConflicts().size()).sum();
+    }
+
+    public long getBytesToWrite() {
+        return plans.stream().mapToLong(SyncPlan::getBytesToWrite).sum();
+    }
+
+    public long getBytesToDelete() {
+        return plans.stream().mapToLong(SyncPlan::getBytesToDelete).sum();
+    }
+
+    /**
+     * Whether applying the plans changes any of the target directories.
+     */
+    public boolean hasChanges() {
+        return getWriteCount() > 0 || getDeleteCount() > 0;
+    }
+}
@@ -21,15 +21,27 @@ package hu.blackbelt.judo.generator.commons;
  */
 
 import com.github.jknack.handlebars.Template;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Getter
 public class TemplateEvaulator {
@@ -41,34 +53,98 @@ public class TemplateEvaulator {
     final Map<String, Expression> templateExpressions;
     final ModelGeneratorContext projectGenerator;
     final StandardEvaluationContext standardEvaluationContext;
+    final GeneratorTemplate generatorTemplate;
+
+    private static final Pattern PARTIAL = Pattern.compile("\\{\\{~?#?>\\s*\"?([^\\s\"}~()]+)");
+
+    @Getter(AccessLevel.NONE)
+    private volatile String templateChecksum;
 
     public TemplateEvaulator(ModelGeneratorContext projectGenerator, GeneratorTemplate generatorTemplate, StandardEvaluationContext standardEvaluationContext) throws IOException {
         this.projectGenerator = projectGenerator;
+        this.generatorTemplate = generatorTemplate;
         this.standardEvaluationContext = standardEvaluationContext;
-        ExpressionParser parser = generatorTemplate.getParser();
-        templateExpressions = generatorTemplate.parseExpressions();
+        // Custom parser of the template is used as is, otherwise the expressions are shared over the templates
+        Function<String, Expression> parser = generatorTemplate.getParser() == SpelExpressionCache.getParser(SpelCompilerMode.OFF)
+                ? e -> projectGenerator.parseExpression(generatorTemplate, e)
+                : generatorTemplate.getParser()::parseExpression;
+        templateExpressions = generatorTemplate.parseExpressions(parser);
         if (generatorTemplate.getFactoryExpression() != null) {
-            factoryExpression = parser.parseExpression(generatorTemplate.getFactoryExpression());
+            factoryExpression = parser.apply(generatorTemplate.getFactoryExpression());
         } else {
             factoryExpression = null;
         }
-        pathExpression = parser.parseExpression(generatorTemplate.getPathExpression());
+        pathExpression = parser.apply(generatorTemplate.getPathExpression());
         if (generatorTemplate.getConditionExpression() != null) {
-            conditionExpression = parser.parseExpression(generatorTemplate.getConditionExpression());
+            conditionExpression = parser.apply(generatorTemplate.getConditionExpression());
         } else {
             conditionExpression = null;
         }
         if (generatorTemplate.isCopy()) {
             template = null;
         } else if (generatorTemplate.getTemplate() != null && !"".equals(generatorTemplate.getTemplate().trim())) {
-            template = projectGenerator.createHandlebars().compileInline(generatorTemplate.getTemplate());
+            template = projectGenerator.compileInline(generatorTemplate.getTemplate());
         } else if (generatorTemplate.getTemplateName() != null && !"".equals(generatorTemplate.getTemplateName().trim())) {
-            template = projectGenerator.createHandlebars().compile(generatorTemplate.getTemplateName());
+            template = projectGenerator.compile(generatorTemplate.getTemplateName());
         } else {
             template = null;
         }
     }
 
+    /**
+     * Returns the checksum of the template source, or in case of copy the checksum of the copied resource.
+     */
+    public String getTemplateChecksum() {
+        if (templateChecksum == null) {
+            if (template != null) {
+                MessageDigest md = ChecksumUtil.createMD5Digest();
+                String text = template.text();
+                md.update(text.getBytes(StandardCharsets.UTF_8));
+                updatePartials(md, text, new HashSet<>());
+                templateChecksum = ChecksumUtil.format(md.digest());
+            } else if (generatorTemplate.isCopy()) {
+                MessageDigest md = ChecksumUtil.createMD5Digest();
+                URL resource = ModelGenerator.getCopyResource(projectGenerator, generatorTemplate);
+                if (resource != null) {
+                    try (InputStream is = resource.openStream();
+                         DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), md)) {
+                        is.transferTo(out);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not read: " + resource, e);
+                    }
+                }
+                templateChecksum = ChecksumUtil.format(md.digest());
+            } else {
+                templateChecksum = "";
+            }
+        }
+        return templateChecksum;
+    }
+
+    /**
+     * Adds the names and sources of the partials included by name to the checksum, recursively. The dynamic partials
+     * and the inline partials are not loaded.
+     */
+    private void updatePartials(MessageDigest md, String text, Set<String> visited) {
+        Matcher matcher = PARTIAL.matcher(text);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            if (visited.add(name)) {
+                md.update((byte) 0);
+                md.update(name.getBytes(StandardCharsets.UTF_8));
+                String partial;
+                try {
+                    partial = projectGenerator.getTemplateLoader().sourceAt(name).content(StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    continue;
+                }
+                md.update((byte) 0);
+                md.update(partial.getBytes(StandardCharsets.UTF_8));
+                updatePartials(md, partial, visited);
+            }
+        }
+    }
+
     public <C> C getFactoryExpressionResultOrValue(GeneratorTemplate template, Object value, Class<C> type) {
         if (getFactoryExpression() == null && type.isAssignableFrom(value.getClass())) {
             return (C) value;
@@ -20,33 +20,228 @@ package hu.blackbelt.judo.generator.commons;
  * #L%
  */
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import hu.blackbelt.judo.generator.commons.annotations.ContextAccessor;
 import hu.blackbelt.judo.generator.commons.annotations.TemplateHelper;
+import hu.blackbelt.judo.generator.commons.annotations.TemplateHelperIndexProcessor;
 import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ClassInfo;
-import io.github.classgraph.ClassInfoList;
+import io.github.classgraph.ScanResult;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
+/**
+ * Finds the classes annotated with {@link TemplateHelper} and {@link ContextAccessor}.
+ * <p>
+ * The index written by {@link TemplateHelperIndexProcessor} is read from the classpath entries where it is presented,
+ * and the other entries are scanned, so the helpers of the modules compiled without the processor are found too.
+ * The scan is done once per class loaders, accepted packages and indexed entries, the class loaders are held weakly.
+ */
 @Slf4j
 public class TemplateHelperFinder {
 
+    private static final Cache<ClassLoader, Cache<ScanKey, AnnotatedTypes>> SCANS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private static final class AnnotatedTypes {
+        final Set<String> templateHelpers;
+        final Set<String> contextAccessors;
+
+        AnnotatedTypes(Collection<String> templateHelpers, Collection<String> contextAccessors) {
+            this.templateHelpers = Collections.unmodifiableSet(new TreeSet<>(templateHelpers));
+            this.contextAccessors = Collections.unmodifiableSet(new TreeSet<>(contextAccessors));
+        }
+    }
+
+    /**
+     * The key of a scan in the cache of the first class loader. The other class loaders are held weakly too.
+     */
+    private static final class ScanKey {
+        final List<WeakReference<ClassLoader>> classLoaders = new ArrayList<>();
+        final List<String> packages;
+        final Set<String> indexedRoots;
+        final int hashCode;
 
-    private static ClassInfoList getAnnotatedTypes(Class annotation, Collection<String> acceptedPackages, ClassLoader...classLoaders) {
-        ClassGraph classGraph =  new ClassGraph()
+        ScanKey(ClassLoader[] classLoaders, List<String> packages, Set<String> indexedRoots) {
+            int hash = Objects.hash(packages, indexedRoots);
+            for (int i = 1; i < classLoaders.length; i++) {
+                this.classLoaders.add(new WeakReference<>(classLoaders[i]));
+                hash = 31 * hash + System.identityHashCode(classLoaders[i]);
+            }
+            this.packages = packages;
+            this.indexedRoots = indexedRoots;
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ScanKey)) {
+                return false;
+            }
+            ScanKey other = (ScanKey) o;
+            if (hashCode != other.hashCode || classLoaders.size() != other.classLoaders.size()
+                    || !packages.equals(other.packages) || !indexedRoots.equals(other.indexedRoots)) {
+                return false;
+            }
+            for (int i = 0; i < classLoaders.size(); i++) {
+                ClassLoader classLoader = classLoaders.get(i).get();
+                if (classLoader == null || classLoader != other.classLoaders.get(i).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Index {
+        final Set<String> roots = new TreeSet<>();
+        final Set<String> templateHelpers = new TreeSet<>();
+        final Set<String> contextAccessors = new TreeSet<>();
+    }
+
+    private static AnnotatedTypes getAnnotatedTypes(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
+        ClassLoader[] classLoadersEff = getClassLooaders(classLoaders);
+        List<String> packages = acceptedPackages == null ? Collections.emptyList() : acceptedPackages.stream()
+                .map(s -> s.trim())
+                .sorted()
+                .collect(Collectors.toList());
+
+        Index index = readIndex(classLoadersEff);
+        AnnotatedTypes scanned;
+        try {
+            scanned = SCANS.get(classLoadersEff[0], () -> CacheBuilder.newBuilder().softValues().build())
+                    .get(new ScanKey(classLoadersEff, packages, index.roots), () -> scan(packages, index.roots, classLoadersEff));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        Set<String> templateHelpers = new TreeSet<>(scanned.templateHelpers);
+        Set<String> contextAccessors = new TreeSet<>(scanned.contextAccessors);
+        index.templateHelpers.stream().filter(n -> isAccepted(n, packages)).forEach(templateHelpers::add);
+        index.contextAccessors.stream().filter(n -> isAccepted(n, packages)).forEach(contextAccessors::add);
+        return new AnnotatedTypes(templateHelpers, contextAccessors);
+    }
+
+    private static AnnotatedTypes scan(List<String> packages, Set<String> indexedRoots, ClassLoader[] classLoaders) {
+        long start = System.nanoTime();
+        ClassGraph classGraph = new ClassGraph()
                 .enableAnnotationInfo()
-                .overrideClassLoaders(getClassLooaders(classLoaders));
+                .overrideClassLoaders(classLoaders)
+                .filterClasspathElementsByURL(url -> !indexedRoots.contains(normalizeRoot(url.toString())));
 
-        if (acceptedPackages != null && acceptedPackages.size() > 0) {
-            classGraph.acceptPackages(acceptedPackages.stream().map(s -> s.trim()).collect(Collectors.toList()).toArray(new String[acceptedPackages.size()]));
+        if (!packages.isEmpty()) {
+            classGraph.acceptPackages(packages.toArray(new String[0]));
+        }
+        try (ScanResult scanResult = classGraph.scan()) {
+            AnnotatedTypes annotatedTypes = new AnnotatedTypes(
+                    scanResult.getClassesWithAnnotation(TemplateHelper.class.getName()).getNames(),
+                    scanResult.getClassesWithAnnotation(ContextAccessor.class.getName()).getNames());
+            log.info("Classpath scanned for template helpers in " + (System.nanoTime() - start) / 1000000 + " ms"
+                    + (packages.isEmpty() ? "" : " (packages: " + String.join(", ", packages) + ")")
+                    + (indexedRoots.isEmpty() ? "" : ", " + indexedRoots.size() + " indexed classpath entries skipped"));
+            return annotatedTypes;
         }
-        return   classGraph.scan()
-                .getClassesWithAnnotation(annotation.getName());
+    }
+
+    private static Index readIndex(ClassLoader[] classLoaders) throws IOException {
+        Index index = new Index();
+        for (ClassLoader classLoader : classLoaders) {
+            readIndex(classLoader, TemplateHelperIndexProcessor.TEMPLATE_HELPERS_INDEX, index.roots, index.templateHelpers);
+            readIndex(classLoader, TemplateHelperIndexProcessor.CONTEXT_ACCESSORS_INDEX, index.roots, index.contextAccessors);
+        }
+        if (!index.roots.isEmpty()) {
+            log.debug("Template helpers are read from the index of: " + String.join(", ", index.roots));
+        }
+        return index;
+    }
+
+    private static void readIndex(ClassLoader classLoader, String location, Set<String> roots, Set<String> names) throws IOException {
+        Enumeration<URL> resources = classLoader.getResources(location);
+        while (resources.hasMoreElements()) {
+            URL url = resources.nextElement();
+            String indexUrl = url.toString();
+            roots.add(normalizeRoot(indexUrl.startsWith("jar:") && indexUrl.contains("!/")
+                    ? indexUrl.substring(0, indexUrl.lastIndexOf("!/"))
+                    : indexUrl.substring(0, indexUrl.length() - location.length())));
+            try (InputStream inputStream = url.openStream();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                reader.lines()
+                        .map(String::trim)
+                        .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                        .forEach(names::add);
+            }
+        }
+    }
+
+    /**
+     * Returns the path of the classpath entry (jar or directory) of the given URL, so the URLs of the index resources
+     * and the URLs of the scanned entries can be compared.
+     */
+    private static String normalizeRoot(String url) {
+        String root = url.startsWith("jar:") ? url.substring("jar:".length()) : url;
+        if (root.endsWith("!/")) {
+            root = root.substring(0, root.length() - "!/".length());
+        }
+        try {
+            return Paths.get(new URI(root)).toAbsolutePath().normalize().toString();
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            return root;
+        }
+    }
+
+    private static boolean isAccepted(String className, List<String> packages) {
+        return packages.isEmpty() || packages.stream().anyMatch(p -> className.startsWith(p + "."));
+    }
+
+    private static Collection<Class> loadClasses(Collection<String> classNames, ClassLoader...classLoaders) {
+        ClassLoader[] classLoadersEff = getClassLooaders(classLoaders);
+        Set<Class> classes = new LinkedHashSet<>();
+        for (String className : classNames) {
+            loadClass(className, classLoadersEff).ifPresent(classes::add);
+        }
+        return classes;
+    }
+
+    private static Optional<Class> loadClass(String className, ClassLoader[] classLoaders) {
+        for (ClassLoader classLoader : classLoaders) {
+            try {
+                return Optional.of(Class.forName(className, false, classLoader));
+            } catch (ClassNotFoundException e) {
+                // Try the next class loader
+            }
+        }
+        // The index can contain removed classes until the module is cleaned
+        log.warn("Template helper class not found: " + className);
+        return Optional.empty();
     }
 
     private static ClassLoader[] getClassLooaders(ClassLoader...classLoaders) {
@@ -57,47 +252,52 @@ public class TemplateHelperFinder {
         return classLoadersEff;
     }
     public static Collection<String> collectHelpers(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
-        return getAnnotatedTypes(TemplateHelper.class, acceptedPackages, classLoaders).stream().map(c -> c.getName()).collect(Collectors.toSet());
+        return getAnnotatedTypes(acceptedPackages, classLoaders).templateHelpers;
     }
 
     public static Collection<String> collectHelpers(ClassLoader...classLoaders) throws IOException {
-        return getAnnotatedTypes(TemplateHelper.class, null, classLoaders).stream().map(c -> c.getName()).collect(Collectors.toSet());
+        return getAnnotatedTypes(null, classLoaders).templateHelpers;
     }
 
     public static Collection<Class> collectHelpersAsClass(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
-        return getAnnotatedTypes(TemplateHelper.class, acceptedPackages, classLoaders).stream().map(c -> c.loadClass()).collect(Collectors.toSet());
+        return loadClasses(getAnnotatedTypes(acceptedPackages, classLoaders).templateHelpers, classLoaders);
     }
 
     public static Collection<Class> collectHelpersAsClass(ClassLoader...classLoaders) throws IOException {
-        return getAnnotatedTypes(TemplateHelper.class, null, classLoaders).stream().map(c -> c.loadClass()).collect(Collectors.toSet());
+        return loadClasses(getAnnotatedTypes(null, classLoaders).templateHelpers, classLoaders);
     }
 
-    private static Optional<ClassInfo> findContextAccessorClassInfo(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
-        ClassInfoList classInfos = getAnnotatedTypes(ContextAccessor.class, acceptedPackages, classLoaders);
-        if (classInfos.size() > 1) {
+    private static Optional<String> findContextAccessorName(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
+        Set<String> contextAccessors = getAnnotatedTypes(acceptedPackages, classLoaders).contextAccessors;
+        if (contextAccessors.size() > 1) {
             throw new IllegalArgumentException("Multiple instance of class annotated with @ContextAccessor found: " +
-                    classInfos.stream().map(c -> c.getName()).collect(Collectors.joining(", ")));
-        }
-        if (classInfos.size() == 1) {
-            return Optional.of(classInfos.get(0));
+                    String.join(", ", contextAccessors));
         }
-        return Optional.empty();
+        return contextAccessors.stream().findFirst();
     }
 
     public static Optional<Class> findContextAccessorAsClass(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
-        return findContextAccessorClassInfo(acceptedPackages, classLoaders).map(o -> o.loadClass());
+        Optional<String> contextAccessor = findContextAccessorName(acceptedPackages, classLoaders);
+        return contextAccessor.flatMap(c -> loadClass(c, getClassLooaders(classLoaders)));
     }
 
     public static Optional<Class> findContextAccessorAsClass(ClassLoader...classLoaders) throws IOException {
-        return findContextAccessorClassInfo(null, classLoaders).map(o -> o.loadClass());
+        return findContextAccessorAsClass(null, classLoaders);
     }
 
     public static Optional<String> findContextAccessor(Collection<String> acceptedPackages, ClassLoader...classLoaders) throws IOException {
-        return findContextAccessorClassInfo(acceptedPackages, classLoaders).map(o -> o.getName());
+        return findContextAccessorName(acceptedPackages, classLoaders);
     }
 
     public static Optional<String> findContextAccessor(ClassLoader...classLoaders) throws IOException {
-        return findContextAccessorClassInfo(null, classLoaders).map(o -> o.getName());
+        return findContextAccessorName(null, classLoaders);
+    }
+
+    /**
+     * Drops the memoized scan results, so the next lookup scans the classpath again.
+     */
+    public static void clearScanCache() {
+        SCANS.invalidateAll();
     }
 
 }
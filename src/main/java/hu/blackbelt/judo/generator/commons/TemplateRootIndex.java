@@ -0,0 +1,198 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the (non empty) resources of a template root. With the index the presence of the templates and
+ * overrides can be checked without opening the resources.
+ * <p>
+ * The directory roots are listed, for the other roots the {@link #INDEX_FILE} placed in the root is used, which
+ * can be generated on build time with {@link #writeIndexFile(Path)}. When there is no index file, the jar roots
+ * are listed. Other roots (e.g. bundle resources without index file) cannot be indexed.
+ */
+@Slf4j
+public final class TemplateRootIndex {
+
+    public static final String INDEX_FILE = ".template-index";
+
+    private final String rootPrefix;
+
+    private final Set<String> entries;
+
+    private TemplateRootIndex(String rootPrefix, Set<String> entries) {
+        this.rootPrefix = rootPrefix;
+        this.entries = Collections.unmodifiableSet(entries);
+    }
+
+    /**
+     * Creates the index of the given root.
+     *
+     * @return the index or null when the root cannot be indexed
+     */
+    public static TemplateRootIndex load(URI root) {
+        String rootPrefix;
+        try {
+            rootPrefix = toPrefix(new URI(root.toString()).normalize().toURL());
+        } catch (URISyntaxException | IOException | IllegalArgumentException e) {
+            log.debug("Could not index template root: " + root);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        Set<String> entries = null;
+        try {
+            if ("file".equals(root.getScheme())) {
+                entries = listDirectory(Paths.get(root));
+            } else {
+                entries = readIndexFile(new URL(rootPrefix + INDEX_FILE));
+                if (entries == null && "jar".equals(root.getScheme())) {
+                    entries = listJar(new URL(rootPrefix));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not index template root: " + root, e);
+        }
+        if (entries == null) {
+            log.debug("Template root is not indexed: " + root);
+            return null;
+        }
+        log.debug("Template root indexed: " + root + " with " + entries.size() + " entries in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return new TemplateRootIndex(rootPrefix, entries);
+    }
+
+    /**
+     * Checks the presence of the given resource.
+     *
+     * @return presence of the resource or null when the URL is not under the indexed root
+     */
+    public Boolean isPresent(URL url) {
+        String urlString = url.toString();
+        if (!urlString.startsWith(rootPrefix)) {
+            return null;
+        }
+        String relativePath = urlString.substring(rootPrefix.length());
+        if (relativePath.indexOf('%') >= 0) {
+            relativePath = URLDecoder.decode(relativePath.replace("+", "%2B"), StandardCharsets.UTF_8);
+        }
+        return entries.contains(relativePath);
+    }
+
+    public Set<String> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Writes the index file of the given template directory. It is used on build time to ship
+     * index with the templates.
+     */
+    public static void writeIndexFile(Path rootDirectory) throws IOException {
+        List<String> entries = listDirectory(rootDirectory).stream()
+                .filter(e -> !INDEX_FILE.equals(e))
+                .sorted()
+                .collect(Collectors.toList());
+        Files.write(rootDirectory.resolve(INDEX_FILE), entries, StandardCharsets.UTF_8);
+    }
+
+    private static String toPrefix(URL url) {
+        String prefix = url.toString();
+        return prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    private static Set<String> listDirectory(Path rootDirectory) throws IOException {
+        try (Stream<Path> paths = Files.walk(rootDirectory)) {
+            return paths.filter(p -> {
+                        try {
+                            return Files.isRegularFile(p) && Files.size(p) > 0;
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .map(p -> rootDirectory.relativize(p).toString().replace(p.getFileSystem().getSeparator(), "/"))
+                    .collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    private static Set<String> readIndexFile(URL indexUrl) throws IOException {
+        try (InputStream is = indexUrl.openStream();
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .map(String::trim)
+                    .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                    .collect(Collectors.toCollection(HashSet::new));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Set<String> listJar(URL rootUrl) throws IOException, URISyntaxException {
+        // The jar file is opened directly, because the connection requires the entry of the root to be presented
+        String spec = rootUrl.getFile();
+        int separator = spec.indexOf("!/");
+        if (separator < 0) {
+            return null;
+        }
+        URL jarUrl = new URL(spec.substring(0, separator));
+        if (!"file".equals(jarUrl.getProtocol())) {
+            return null;
+        }
+        String entryPrefix = toEntryPrefix(URLDecoder.decode(spec.substring(separator + 2).replace("+", "%2B"), StandardCharsets.UTF_8));
+        Set<String> entries = new HashSet<>();
+        try (JarFile jarFile = new JarFile(Paths.get(jarUrl.toURI()).toFile())) {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
+                if (!jarEntry.isDirectory() && jarEntry.getSize() != 0 && jarEntry.getName().startsWith(entryPrefix)) {
+                    entries.add(jarEntry.getName().substring(entryPrefix.length()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String toEntryPrefix(String path) {
+        return path.isEmpty() || path.endsWith("/") ? path : path + "/";
+    }
+}
@@ -20,31 +20,136 @@ package hu.blackbelt.judo.generator.commons;
  * #L%
  */
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
  * The handlebars context inaccessible in helpers / value resolvers
  * because there is no state for them. The ThreadLocal is used
  * to init variable values from template execution.
+ * <p>
+ * The context is bound per thread, so the variables are read without locking. {@link #bind(Map)} can be used with
+ * try-with-resources, it restores the previous context when it is closed. The values of the {@link ContextVariable}s
+ * are cached per bound context, so the variables which are read frequently are not looked up and converted
+ * again (the bound map is not expected to change).
  */
 public abstract class ThreadLocalContextHolder {
-    private static ThreadLocal<Map<String, ?>> contextLocal = new ThreadLocal<>();
 
+    private static final ThreadLocal<Map<String, ?>> contextLocal = new ThreadLocal<>();
+
+    private static final ThreadLocal<Scope> scopeLocal = new ThreadLocal<>();
+
+    /**
+     * @deprecated use {@link #getContext()}, {@link #bindContext(Map)} and {@link #bind(Map)}
+     */
+    @Deprecated
     public static ThreadLocal<Map<String, ?>>getContextLocal() {
         return contextLocal;
     }
 
-    public static void bindContext(Map<String, ?> context) {
-        contextLocal.set(context);
+    /**
+     * Returns the context bound to the current thread, or null when no context is bound.
+     */
+    public static Map<String, ?> getContext() {
+        return contextLocal.get();
     }
 
-    public static synchronized Object getVariable(String key) {
-        if (contextLocal.get() == null) {
-            System.out.println("Could not retrieve contextLocal");
-            throw new RuntimeException("Could not retrieve contextLocal");
+    /**
+     * Binds the context to the current thread, or unbinds the current one when it is null.
+     */
+    public static void bindContext(Map<String, ?> context) {
+        if (context == null) {
+            contextLocal.remove();
+            scopeLocal.remove();
         } else {
-            return contextLocal.get().get(key);
+            contextLocal.set(context);
+            scopeLocal.set(new Scope(context));
         }
     }
 
+    /**
+     * Binds the context to the current thread until the returned binding is closed, then the previous context
+     * is bound again.
+     */
+    public static Binding bind(Map<String, ?> context) {
+        Binding binding = new Binding(contextLocal.get(), scopeLocal.get());
+        bindContext(context);
+        return binding;
+    }
+
+    public static Object getVariable(String key) {
+        return getBoundContext().get(key);
+    }
+
+    static <T> T getVariable(ContextVariable<T> variable) {
+        Map<String, ?> context = getBoundContext();
+        Scope scope = scopeLocal.get();
+        if (scope == null || scope.context != context) {
+            // The context is set through the deprecated thread local
+            scope = new Scope(context);
+            scopeLocal.set(scope);
+        }
+        return scope.get(variable);
+    }
+
+    private static Map<String, ?> getBoundContext() {
+        Map<String, ?> context = contextLocal.get();
+        if (context == null) {
+            // The context may be removed through the deprecated thread local
+            scopeLocal.remove();
+            throw new IllegalStateException("Could not retrieve contextLocal");
+        }
+        return context;
+    }
+
+    /**
+     * Restores the previous context of the thread when it is closed.
+     */
+    public static final class Binding implements AutoCloseable {
+        private final Map<String, ?> previousContext;
+        private final Scope previousScope;
+
+        private Binding(Map<String, ?> previousContext, Scope previousScope) {
+            this.previousContext = previousContext;
+            this.previousScope = previousScope;
+        }
+
+        @Override
+        public void close() {
+            if (previousContext == null) {
+                bindContext(null);
+            } else if (previousScope != null && previousScope.context == previousContext) {
+                contextLocal.set(previousContext);
+                scopeLocal.set(previousScope);
+            } else {
+                bindContext(previousContext);
+            }
+        }
+    }
+
+    private static final class Scope {
+        final Map<String, ?> context;
+        Object[] values = new Object[0];
+        ContextVariable<?>[] variables = new ContextVariable<?>[0];
+
+        Scope(Map<String, ?> context) {
+            this.context = context;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T get(ContextVariable<T> variable) {
+            int slot = variable.getSlot();
+            if (slot >= values.length) {
+                int length = Math.max(slot + 1, values.length * 2);
+                values = Arrays.copyOf(values, length);
+                variables = Arrays.copyOf(variables, length);
+            }
+            // The slot is shared by the variables with the same name, the value is cached for the last one
+            if (variables[slot] != variable) {
+                values[slot] = variable.convert(context.get(variable.getName()));
+                variables[slot] = variable;
+            }
+            return (T) values[slot];
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.github.jknack.handlebars.ValueResolver;
+import com.github.jknack.handlebars.context.FieldValueResolver;
+import com.github.jknack.handlebars.context.JavaBeanValueResolver;
+import com.github.jknack.handlebars.context.MapValueResolver;
+import com.github.jknack.handlebars.context.MethodValueResolver;
+import com.google.common.collect.ImmutableSet;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Composite value resolver which tries the resolvers in order, like the resolvers of the Handlebars context, but
+ * remembers per context class and property name which resolvers can be skipped.
+ * <p>
+ * Whether the built-in {@link JavaBeanValueResolver}, {@link MethodValueResolver} and {@link FieldValueResolver}
+ * resolvers, and the {@link MapValueResolver} for non-map contexts resolve a name depends only on the class of the
+ * context and the name. Their subclasses are not trusted. The {@link StaticMethodValueResolver} resolvers are trusted
+ * when {@link StaticMethodValueResolver#isClassDetermined()} is set. These resolvers are skipped when they did not
+ * resolve the name for the class, and when one of them resolved it, the later resolvers are not tried, so the resolver
+ * which hits is called (almost) first. The other resolvers are always tried in their order, so the result is the same
+ * as the result of the plain chain.
+ * <p>
+ * It is opt-in: it is used only when it is set as the resolver of the Handlebars contexts built by the generators
+ * (see {@link ModelGeneratorContext#getValueResolverChain()}), or when {@link ParallelGeneratorExecutor} is built
+ * with valueResolverChain.
+ */
+@Slf4j
+public final class ValueResolverChain implements ValueResolver {
+
+    private static final Set<Class<?>> CLASS_DETERMINED_RESOLVERS = ImmutableSet.of(
+            JavaBeanValueResolver.class, MethodValueResolver.class, FieldValueResolver.class);
+
+    private final ValueResolver[] resolvers;
+
+    private final boolean[] classDetermined;
+
+    private final LongAdder[] hits;
+
+    private final LongAdder misses = new LongAdder();
+
+    private final ClassValue<Map<String, int[]>> plans = new ClassValue<>() {
+        @Override
+        protected Map<String, int[]> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private ValueResolverChain(List<ValueResolver> resolvers) {
+        this.resolvers = resolvers.toArray(new ValueResolver[0]);
+        this.classDetermined = new boolean[this.resolvers.length];
+        this.hits = new LongAdder[this.resolvers.length];
+        for (int i = 0; i < hits.length; i++) {
+            classDetermined[i] = CLASS_DETERMINED_RESOLVERS.contains(this.resolvers[i].getClass())
+                    || this.resolvers[i] instanceof StaticMethodValueResolver
+                    && ((StaticMethodValueResolver) this.resolvers[i]).isClassDetermined();
+            hits[i] = new LongAdder();
+        }
+    }
+
+    public static ValueResolverChain of(Collection<? extends ValueResolver> resolvers) {
+        return new ValueResolverChain(new ArrayList<>(resolvers));
+    }
+
+    /**
+     * Creates a chain of the default Handlebars resolvers followed by the given resolvers.
+     */
+    public static ValueResolverChain withDefaultValueResolvers(Collection<? extends ValueResolver> resolvers) {
+        List<ValueResolver> chain = new ArrayList<>(ValueResolver.defaultValueResolvers());
+        chain.addAll(resolvers);
+        return new ValueResolverChain(chain);
+    }
+
+    @Override
+    public Object resolve(Object context, String name) {
+        if (context == null) {
+            return resolveInOrder(context, name);
+        }
+        Map<String, int[]> plansByName = plans.get(context.getClass());
+        int[] plan = plansByName.get(name);
+        if (plan == null) {
+            return resolveAndCreatePlan(context, name, plansByName);
+        }
+        for (int index : plan) {
+            Object value = resolvers[index].resolve(context, name);
+            if (value != UNRESOLVED) {
+                hits[index].increment();
+                return value;
+            }
+        }
+        misses.increment();
+        return UNRESOLVED;
+    }
+
+    private Object resolveInOrder(Object context, String name) {
+        for (int i = 0; i < resolvers.length; i++) {
+            Object value = resolvers[i].resolve(context, name);
+            if (value != UNRESOLVED) {
+                hits[i].increment();
+                return value;
+            }
+        }
+        misses.increment();
+        return UNRESOLVED;
+    }
+
+    private Object resolveAndCreatePlan(Object context, String name, Map<String, int[]> plansByName) {
+        List<Integer> plan = new ArrayList<>();
+        Object value = UNRESOLVED;
+        for (int i = 0; i < resolvers.length; i++) {
+            if (value != UNRESOLVED) {
+                // Resolved by a resolver which depends on the value, the later ones may be needed next time
+                plan.add(i);
+                continue;
+            }
+            value = resolvers[i].resolve(context, name);
+            boolean classDetermined = isClassDetermined(i, context);
+            if (value != UNRESOLVED) {
+                hits[i].increment();
+                plan.add(i);
+                if (classDetermined) {
+                    break;
+                }
+            } else if (!classDetermined) {
+                plan.add(i);
+            }
+        }
+        if (value == UNRESOLVED) {
+            misses.increment();
+        }
+        plansByName.putIfAbsent(name, plan.stream().mapToInt(Integer::intValue).toArray());
+        return value;
+    }
+
+    private boolean isClassDetermined(int index, Object context) {
+        return classDetermined[index] || resolvers[index] instanceof MapValueResolver && !(context instanceof Map);
+    }
+
+    @Override
+    public Object resolve(Object context) {
+        for (ValueResolver resolver : resolvers) {
+            Object value = resolver.resolve(context);
+            if (value != UNRESOLVED) {
+                return value;
+            }
+        }
+        return UNRESOLVED;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> propertySet(Object context) {
+        Set<Map.Entry<String, Object>> propertySet = new LinkedHashSet<>();
+        for (ValueResolver resolver : resolvers) {
+            propertySet.addAll(resolver.propertySet(context));
+        }
+        return propertySet;
+    }
+
+    /**
+     * The number of the lookups resolved by the resolvers, by the class name of the resolvers, in the order
+     * of the chain.
+     */
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < resolvers.length; i++) {
+            counts.merge(resolvers[i].getClass().getName(), hits[i].sum(), Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * The number of the lookups which are not resolved by any resolver.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Logs the hit counts of the resolvers.
+     */
+    public void reportStatistics() {
+        getHitCounts().forEach((k, v) -> log.debug(k + " resolved " + v + " lookup(s)"));
+        log.debug("Unresolved " + getMissCount() + " lookup(s)");
+    }
+}
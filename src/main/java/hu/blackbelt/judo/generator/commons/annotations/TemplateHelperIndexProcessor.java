@@ -0,0 +1,111 @@
+package hu.blackbelt.judo.generator.commons.annotations;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the names of the classes annotated with {@link TemplateHelper} and {@link ContextAccessor} to
+ * {@link #TEMPLATE_HELPERS_INDEX} and {@link #CONTEXT_ACCESSORS_INDEX}, so the helpers can be found without scanning
+ * the classpath. The processor is registered as a service, so it runs when the module is on the classpath of the
+ * compiler (when the annotation processor path is configured, this module has to be added to it).
+ */
+@SupportedAnnotationTypes({
+        "hu.blackbelt.judo.generator.commons.annotations.TemplateHelper",
+        "hu.blackbelt.judo.generator.commons.annotations.ContextAccessor"})
+public class TemplateHelperIndexProcessor extends AbstractProcessor {
+
+    public static final String TEMPLATE_HELPERS_INDEX = "META-INF/judo-generator/template-helpers";
+
+    public static final String CONTEXT_ACCESSORS_INDEX = "META-INF/judo-generator/context-accessors";
+
+    private final Set<String> templateHelpers = new TreeSet<>();
+
+    private final Set<String> contextAccessors = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex(TEMPLATE_HELPERS_INDEX, templateHelpers);
+            writeIndex(CONTEXT_ACCESSORS_INDEX, contextAccessors);
+        } else {
+            collect(roundEnv.getElementsAnnotatedWith(TemplateHelper.class), templateHelpers);
+            collect(roundEnv.getElementsAnnotatedWith(ContextAccessor.class), contextAccessors);
+        }
+        return false;
+    }
+
+    private void collect(Set<? extends Element> elements, Set<String> names) {
+        for (Element element : elements) {
+            if (element instanceof TypeElement) {
+                names.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            }
+        }
+    }
+
+    private void writeIndex(String location, Set<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        // On incremental compilation only the changed sources are processed, the existing entries are kept
+        Set<String> entries = new TreeSet<>(names);
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", location);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                reader.lines().map(String::trim).filter(l -> !l.isEmpty()).forEach(entries::add);
+            }
+        } catch (IOException e) {
+            // There is no index yet
+        }
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", location);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String entry : entries) {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + location + ": " + e.getMessage());
+        }
+    }
+}
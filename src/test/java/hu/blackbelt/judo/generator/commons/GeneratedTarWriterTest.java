@@ -0,0 +1,81 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeneratedTarWriterTest {
+
+    @Test
+    void testReproducibleTar() throws IOException {
+        String longPath = "level1/" + "a".repeat(120) + "/file";
+        GeneratorResult<String> result = GeneratorResult.<String>generatorResult()
+                .generatedByDiscriminator(ImmutableMap.of("actor", ImmutableList.of(
+                        GeneratedFile.builder().path("run.sh").content("echo".getBytes(StandardCharsets.UTF_8))
+                                .permissions(PosixFilePermissions.fromString("rwxr-x---")).build())))
+                .generated(ImmutableList.of(
+                        GeneratedFile.builder().path(longPath).content("long".getBytes(StandardCharsets.UTF_8)).build(),
+                        GeneratedFile.builder().path("file").content("content".getBytes(StandardCharsets.UTF_8)).build(),
+                        GeneratedFile.builder().path("skipped").condition(false).build()))
+                .build();
+
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        GeneratedTarWriter.reproducibleTarWriter().build().write(result, a -> a, tar);
+        byte[] archive = tar.toByteArray();
+
+        assertEquals(0, archive.length % 10240);
+        List<String> headers = new ArrayList<>();
+        for (int offset = 0; archive[offset] != 0; ) {
+            String name = field(archive, offset, 100);
+            String prefix = field(archive, offset + 345, 155);
+            long size = Long.parseLong(field(archive, offset + 124, 12), 8);
+            headers.add((prefix.isEmpty() ? name : prefix + "/" + name) + " " + field(archive, offset + 100, 8)
+                    + " " + field(archive, offset + 136, 12));
+            offset += 512 + (int) ((size + 511) / 512 * 512);
+        }
+        // 02263523000 is 1980-01-01T00:00:00Z
+        assertEquals(ImmutableList.of(
+                "actor/run.sh 0000750 02263523000",
+                "file 0000644 02263523000",
+                longPath + " 0000644 02263523000"), headers);
+    }
+
+    private static String field(byte[] archive, int offset, int length) {
+        byte[] value = Arrays.copyOfRange(archive, offset, offset + length);
+        int end = 0;
+        while (end < length && value[end] != 0) {
+            end++;
+        }
+        return new String(value, 0, end, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeneratedZipWriterTest {
+    static final String TMP_DIR_PREFIX = "generatedZipWriterTestTarget";
+    Path tmpTargetDir;
+    List<GeneratedFile> generatedFiles;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpTargetDir = Files.createTempDirectory(Paths.get("target"), TMP_DIR_PREFIX);
+        generatedFiles = ImmutableList.of(
+                GeneratedFile.builder().path("level1/file1.txt").content("level1/file1".repeat(100).getBytes(StandardCharsets.UTF_8)).build(),
+                GeneratedFile.builder().path("level1/image.png").content(new byte[] {1, 2, 3, 4}).copied(true).build(),
+                GeneratedFile.builder().path("level1/empty").content(new byte[0]).build());
+    }
+
+    @Test
+    void testZipWritten() throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        GeneratedZipWriter.generatedZipWriter().build().write(generatedFiles, zip);
+
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), ByteStreams.toByteArray(zipInputStream));
+            }
+        }
+
+        assertEquals(ImmutableList.of("level1/file1.txt", "level1/image.png", "level1/empty"), ImmutableList.copyOf(entries.keySet()));
+        assertEquals(ZipEntry.DEFLATED, entries.get("level1/file1.txt").getMethod());
+        assertEquals(ZipEntry.STORED, entries.get("level1/image.png").getMethod());
+        for (GeneratedFile generatedFile : generatedFiles) {
+            assertArrayEquals(generatedFile.getContent(), contents.get(generatedFile.getPath()));
+        }
+    }
+
+    @Test
+    void testDuplicateEntryRejected() {
+        List<GeneratedFile> files = ImmutableList.<GeneratedFile>builder()
+                .addAll(generatedFiles)
+                .add(GeneratedFile.builder().path("level1/empty").content(new byte[] {1}).build())
+                .build();
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+
+        ZipException exception = assertThrows(ZipException.class, () -> GeneratedZipWriter.generatedZipWriter().build().write(files, zip));
+        assertEquals("duplicate entry: level1/empty", exception.getMessage());
+        assertEquals(0, zip.size());
+    }
+
+    @Test
+    void testParallelDeflate() throws IOException {
+        List<GeneratedFile> files = IntStream.range(0, 100)
+                .mapToObj(i -> GeneratedFile.builder().path("file" + i).content(("content" + i).repeat(i).getBytes(StandardCharsets.UTF_8)).build())
+                .collect(Collectors.toList());
+        Instant lastModified = Instant.parse("2020-01-01T00:00:00Z");
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        GeneratedZipWriter.generatedZipWriter().lastModified(lastModified).build().write(files, sequential);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            GeneratedZipWriter.generatedZipWriter().lastModified(lastModified).deflateExecutor(executor).parallelWindow(4).build()
+                    .write(files, parallel);
+            assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testReproducibleZip() throws IOException {
+        ByteArrayOutputStream zip1 = new ByteArrayOutputStream();
+        GeneratedZipWriter.reproducibleZipWriter().build().write(generatedFiles, zip1);
+        ByteArrayOutputStream zip2 = new ByteArrayOutputStream();
+        GeneratedZipWriter.reproducibleZipWriter().build().write(Lists.reverse(generatedFiles), zip2);
+
+        assertArrayEquals(zip1.toByteArray(), zip2.toByteArray());
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip1.toByteArray()))) {
+            assertEquals("level1/empty", zipInputStream.getNextEntry().getName());
+        }
+    }
+
+    @Test
+    void testZip64EntryCount() throws IOException {
+        List<GeneratedFile> files = IntStream.range(0, 70000)
+                .mapToObj(i -> GeneratedFile.builder().path("file" + i).content(new byte[] {(byte) i}).build())
+                .collect(Collectors.toList());
+        Path zipFile = tmpTargetDir.resolve("generated.zip");
+        GeneratedZipWriter.generatedZipWriter().compressionLevel(Deflater.NO_COMPRESSION).build().write(files, zipFile);
+
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertEquals(70000, zip.size());
+            try (InputStream inputStream = zip.getInputStream(zip.getEntry("file69999"))) {
+                assertEquals((byte) 69999, (byte) inputStream.read());
+            }
+        }
+    }
+}
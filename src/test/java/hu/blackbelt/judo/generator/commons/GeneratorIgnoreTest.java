@@ -20,6 +20,8 @@ package hu.blackbelt.judo.generator.commons;
  * #L%
  */
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -59,7 +61,7 @@ public class GeneratorIgnoreTest {
         level3IgnoreFilePath.getParent().toFile().mkdirs();
 
         Files.write(rootIgnoreFilePath, String.join(newLine,
-    "**/*.php", "app.yaml", "folder-contents-to-ignore/**", "test/*/testing.txt", "level1/level2/level3/ignoredFromRoot")
+    "# generated sources", "**/*.php", "", "app.yaml", "folder-contents-to-ignore/**", "test/*/testing.txt", "level1/level2/level3/ignoredFromRoot")
                 .getBytes(StandardCharsets.UTF_8));
 
         Files.write(level1IgnoreFilePath, String.join(newLine,
@@ -160,6 +162,13 @@ public class GeneratorIgnoreTest {
         assertTrue(generatorIgnore.shouldExcludeFile(path1));
     }
 
+    @Test
+    void testGetExcludedPaths() {
+        assertEquals(ImmutableSet.of("app.yaml", "a/b.php", "level1/level2/level3/ignoredFromLevel2"),
+                generatorIgnore.getExcludedPaths(ImmutableList.of("app.yaml", "lol.yaml", "a/b.php", "a/b.pdf",
+                        "level1/level2/level3/ignoredFromLevel2", "# generated sources")));
+    }
+
     Path absolutePathFor(String... relativePath) {
         return Paths.get(tmpTargetDir.toString(), relativePath);
     }
@@ -0,0 +1,175 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.github.jknack.handlebars.Context;
+import com.google.common.collect.ImmutableList;
+import hu.blackbelt.judo.generator.commons.annotations.TemplateHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.spel.support.ReflectiveMethodResolver;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.support.StandardTypeLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelGeneratorContextTest {
+    static final String TMP_DIR_PREFIX = "modelGeneratorContextTestTarget";
+    Path tmpTargetDir;
+    ModelGeneratorContext generatorContext;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpTargetDir = Files.createTempDirectory(Paths.get("target"), TMP_DIR_PREFIX).toAbsolutePath();
+        ChainedURLTemplateLoader templateLoader = ChainedURLTemplateLoader.createFromURIs(ImmutableList.of(tmpTargetDir.toUri()));
+        generatorContext = ModelGeneratorContext.builder()
+                .templateLoader(templateLoader)
+                .urlResolver(templateLoader)
+                .generatorModel(GeneratorModel.generatorModelBuilder().templates(new HashSet<>()).build())
+                .helpers(ImmutableList.of(StringHelper.class))
+                .build();
+    }
+
+    @Test
+    void testTemplateChecksumContainsPartials() throws Exception {
+        Files.write(tmpTargetDir.resolve("partial"), "partial {{> nested}}".getBytes(StandardCharsets.UTF_8));
+        Files.write(tmpTargetDir.resolve("nested"), "nested".getBytes(StandardCharsets.UTF_8));
+        GeneratorTemplate generatorTemplate = GeneratorTemplate.generatorTemplateBuilder()
+                .name("template")
+                .pathExpression("'file.txt'")
+                .template("{{> partial}} {{> (lookup this 'name')}}")
+                .build();
+        String checksum = generatorTemplate.getTemplateEvalulator(generatorContext, null).getTemplateChecksum();
+        assertEquals(checksum, generatorTemplate.getTemplateEvalulator(generatorContext, null).getTemplateChecksum());
+
+        Files.write(tmpTargetDir.resolve("nested"), "changed".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(checksum, generatorTemplate.getTemplateEvalulator(generatorContext, null).getTemplateChecksum());
+    }
+
+    @Test
+    void testSpringEvaluationContext() {
+        StandardEvaluationContext evaluationContext = generatorContext.createSpringEvaluationContext();
+        evaluationContext.setVariable("name", "Name");
+
+        assertEquals("name", generatorContext.parseExpression("#lowerCase(#name)").getValue(evaluationContext));
+        assertEquals(4, generatorContext.parseExpression("#name.length()").getValue(evaluationContext));
+        // The variables hide the functions with the same name
+        evaluationContext.setVariable("upperCase", "variable");
+        assertEquals("variable", generatorContext.parseExpression("#upperCase").getValue(evaluationContext));
+
+        assertSame(evaluationContext.getPropertyAccessors().get(0),
+                generatorContext.createSpringEvaluationContext().getPropertyAccessors().get(0));
+    }
+
+    @Test
+    void testSpringEvaluationContextPool() {
+        StandardEvaluationContext evaluationContext = generatorContext.acquireSpringEvaluationContext();
+        evaluationContext.setVariable("name", "Name");
+        evaluationContext.setRootObject("root");
+        List<PropertyAccessor> propertyAccessors = new ArrayList<>(evaluationContext.getPropertyAccessors());
+        // The settings changed by the user of the context are not kept
+        evaluationContext.addPropertyAccessor(new ReflectivePropertyAccessor());
+        evaluationContext.addMethodResolver(new ReflectiveMethodResolver());
+        evaluationContext.setBeanResolver((context, beanName) -> beanName);
+        ((StandardTypeLocator) evaluationContext.getTypeLocator()).registerImport("java.util");
+        evaluationContext.setTypeLocator(typeName -> String.class);
+        generatorContext.releaseSpringEvaluationContext(evaluationContext);
+
+        StandardEvaluationContext reused = generatorContext.acquireSpringEvaluationContext();
+        assertSame(evaluationContext, reused);
+        assertNull(reused.lookupVariable("name"));
+        assertNull(reused.getRootObject().getValue());
+        assertEquals(propertyAccessors, reused.getPropertyAccessors());
+        assertEquals(1, reused.getMethodResolvers().size());
+        assertNull(reused.getBeanResolver());
+        assertEquals(ImmutableList.of("java.lang"), ((StandardTypeLocator) reused.getTypeLocator()).getImportPrefixes());
+        assertEquals("ABC", generatorContext.parseExpression("#upperCase('abc')").getValue(reused));
+        assertNotSame(reused, generatorContext.acquireSpringEvaluationContext());
+    }
+
+    ModelGeneratorContext.ModelGeneratorContextBuilder contextBuilder() {
+        return ModelGeneratorContext.builder()
+                .templateLoader(generatorContext.getTemplateLoader())
+                .urlResolver(generatorContext.getUrlResolver())
+                .generatorModel(generatorContext.getGeneratorModel());
+    }
+
+    public static class TestContextAccessor {
+        public static void bindContext(Context context) {
+            context.data("bound", context.model());
+        }
+    }
+
+    @Test
+    void testBindContext() {
+        Context context = Context.newBuilder("model").build();
+        ModelGeneratorContext accessorContext = contextBuilder().contextAccessor(TestContextAccessor.class).build();
+        accessorContext.bindContext(Context.class, context);
+        assertEquals("model", context.data("bound"));
+        // There is no bindContext method for the type
+        accessorContext.bindContext(String.class, "value");
+
+        List<Object> bound = new ArrayList<>();
+        ModelGeneratorContext binderContext = contextBuilder().contextBinder((type, value) -> bound.add(value)).build();
+        binderContext.bindContext(Context.class, context);
+        binderContext.bindContext(String.class, "value");
+        assertEquals(ImmutableList.of(context, "value"), bound);
+    }
+
+    @TemplateHelper
+    public static class NestedHelper extends StaticMethodValueResolver {
+        public static String nested(String value) {
+            return value;
+        }
+    }
+
+    @Test
+    void testHelpersChecksumOfNestedHelper() throws IOException, IllegalAccessException {
+        byte[] bytecode;
+        try (InputStream is = NestedHelper.class.getResourceAsStream("ModelGeneratorContextTest$NestedHelper.class")) {
+            bytecode = is.readAllBytes();
+        }
+        byte[] name = NestedHelper.class.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] expected = new byte[name.length + bytecode.length];
+        System.arraycopy(name, 0, expected, 0, name.length);
+        System.arraycopy(bytecode, 0, expected, name.length, bytecode.length);
+
+        assertEquals(ChecksumUtil.getMD5(expected),
+                contextBuilder().helpers(ImmutableList.of(NestedHelper.class)).build().getHelpersChecksum());
+
+        // The bytecode of a hidden class cannot be read, so the files are not reused
+        Class<?> hiddenHelper = MethodHandles.lookup().defineHiddenClass(bytecode, false).lookupClass();
+        assertNull(contextBuilder().helpers(ImmutableList.of(NestedHelper.class, hiddenHelper)).build().getHelpersChecksum());
+    }
+}
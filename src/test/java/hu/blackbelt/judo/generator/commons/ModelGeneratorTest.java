@@ -31,10 +31,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -175,6 +178,127 @@ public class ModelGeneratorTest {
         assertThat(entries, equalTo(fileSystemEntries));
     }
 
+    @Test
+    void testSyncPlan() throws IOException {
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+        Files.write(absolutePathFor("level1", "file2"), "level1/file2Modified".getBytes(StandardCharsets.UTF_8));
+        writeFile(tmpTargetDir.toFile(), GeneratorIgnore.GENERATOR_IGNORE_FILE, ImmutableList.of("level1/level2/*"));
+        List<GeneratedFile> files = generatedFileCollecton.stream()
+                .filter(f -> !f.getPath().equals("level1/file1")).collect(Collectors.toList());
+        files.add(GeneratedFile.builder().path("level1/file4").content("level1/file4".getBytes(StandardCharsets.UTF_8)).build());
+
+        SyncPlan plan = ModelGenerator.createSyncPlan(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(files)
+                .targetDirectory(tmpTargetDir.toFile())
+                .build());
+
+        assertEquals(ImmutableList.of("level1/file1"), plan.getFilesToDelete());
+        assertEquals(ImmutableList.of("level1/file4"), plan.getFilesToWrite().stream().map(GeneratedFile::getPath).collect(Collectors.toList()));
+        assertEquals(ImmutableList.of("level1/file2"), plan.getUnchangedFiles());
+        assertEquals(ImmutableList.of("level1/level2/file3"), plan.getIgnoredFiles());
+        assertEquals(ImmutableList.of("level1/file2"), plan.getConflicts());
+        assertTrue(plan.isBlocked());
+
+        // Nothing is modified when the plan is blocked
+        assertThrows(IllegalStateException.class, () -> ModelGenerator.applySyncPlan(plan));
+        assertTrue(absolutePathFor("level1", "file1").toFile().exists());
+        assertFalse(absolutePathFor("level1", "file4").toFile().exists());
+    }
+
+    @Test
+    void testDryRun() throws Exception {
+        GeneratorParameter.GeneratorParameterBuilder<String> builder = GeneratorParameter.<String>generatorParameter()
+                .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                .discriminatorTargetNameResolver(a -> a)
+                .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                .performExecutor(p -> GeneratorResult.<String>generatorResult().generated(generatedFileCollecton).build());
+
+        SyncReport report = ModelGenerator.generateToDirectoryWithReport(builder.dryRun(true).build());
+
+        assertTrue(report.isDryRun());
+        assertEquals(3, report.getWriteCount());
+        assertEquals(43, report.getBytesToWrite());
+        assertFalse(absolutePathFor("level1").toFile().exists());
+        assertFalse(absolutePathFor(ModelGenerator.GENERATED_FILES).toFile().exists());
+
+        report = ModelGenerator.generateToDirectoryWithReport(builder.dryRun(false).build());
+        assertEquals(3, report.getWriteCount());
+        assertTrue(absolutePathFor("level1", "file1").toFile().exists());
+
+        report = ModelGenerator.generateToDirectoryWithReport(builder.dryRun(true).build());
+        assertFalse(report.hasChanges());
+        assertEquals(3, report.getUnchangedCount());
+    }
+
+    @Test
+    void testInterruptedGenerationResumed() throws IOException {
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+        // The file is written by the next generation, but the manifest is not updated
+        generatedFileCollecton.stream().filter(f -> f.getPath().equals("level1/file1")).findFirst().get()
+                .setContent("level1/file1Modified".getBytes(StandardCharsets.UTF_8));
+        Files.write(absolutePathFor("level1", "file1"), "level1/file1Modified".getBytes(StandardCharsets.UTF_8));
+
+        ModelGenerator.writeDirectory(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(generatedFileCollecton)
+                .targetDirectory(tmpTargetDir.toFile())
+                .durableWrites(true)
+                .build());
+
+        Collection<GeneratorFileEntry> entries = ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES);
+        assertThat(entries, equalTo(ModelGenerator.readFilesystemEntries(tmpTargetDir.toFile(), entries)));
+        try (Stream<Path> files = Files.walk(tmpTargetDir)) {
+            assertFalse(files.anyMatch(f -> f.toString().endsWith(AtomicFileWriter.TEMP_FILE_SUFFIX)));
+        }
+    }
+
+    @Test
+    void testStaleTempFilesDeleted() throws IOException {
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+        // The JVM crashed while the files were written, the temporary files were not deleted
+        Path staleFile = absolutePathFor("level1", ".file1.4f2a" + AtomicFileWriter.TEMP_FILE_SUFFIX);
+        Path staleManifest = absolutePathFor("." + ModelGenerator.GENERATED_FILES + ".91cd" + AtomicFileWriter.TEMP_FILE_SUFFIX);
+        Path staleRemovedFile = absolutePathFor("level1", "level2", ".file5.3e07" + AtomicFileWriter.TEMP_FILE_SUFFIX);
+        Files.write(staleFile, "level1/fi".getBytes(StandardCharsets.UTF_8));
+        Files.write(staleManifest, "level1/file1,".getBytes(StandardCharsets.UTF_8));
+        Files.write(staleRemovedFile, new byte[0]);
+        Path userFile = absolutePathFor("level1", "notes" + AtomicFileWriter.TEMP_FILE_SUFFIX);
+        Files.write(userFile, "notes".getBytes(StandardCharsets.UTF_8));
+
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+        assertFalse(staleFile.toFile().exists());
+        assertFalse(staleManifest.toFile().exists());
+        assertFalse(staleRemovedFile.toFile().exists());
+        assertTrue(userFile.toFile().exists());
+        assertEquals("level1/file1", Files.readAllLines(absolutePathFor("level1", "file1")).get(0));
+    }
+
+    @Test
+    void testSkipUnchangedContent() throws IOException {
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+        absolutePathFor(ModelGenerator.GENERATED_FILES).toFile().delete();
+
+        FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.setLastModifiedTime(absolutePathFor("level1", "file1"), lastModified);
+        Files.setLastModifiedTime(absolutePathFor("level1", "file2"), lastModified);
+        generatedFileCollecton.stream().filter(f -> f.getPath().equals("level1/file2")).findFirst().get()
+                .setContent("level1/file2Modified".getBytes(StandardCharsets.UTF_8));
+
+        ModelGenerator.writeDirectory(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(generatedFileCollecton)
+                .targetDirectory(tmpTargetDir.toFile())
+                .skipUnchangedContent(true)
+                .build());
+
+        assertEquals(lastModified, Files.getLastModifiedTime(absolutePathFor("level1", "file1")));
+        assertNotEquals(lastModified, Files.getLastModifiedTime(absolutePathFor("level1", "file2")));
+        assertEquals("level1/file2Modified", Files.readAllLines(absolutePathFor("level1", "file2")).get(0));
+        assertEquals(3, ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES).size());
+    }
+
 
     @Test
     void testIgnore() throws IOException {
@@ -199,6 +323,160 @@ public class ModelGeneratorTest {
         assertEquals(2, fileSystemEntries.size());
     }
 
+    @Test
+    void testSpooledFilesWritten() throws Exception {
+        try (GeneratedContentSpool spool = GeneratedContentSpool.createTemporary()) {
+            GeneratedFile spooledFile = GeneratedFile.builder().path("level1/spooled").build();
+            spool.spool(spooledFile, writer -> writer.write("level1/spooled"));
+
+            assertNull(spooledFile.getContent());
+            assertEquals(ChecksumUtil.getMD5("level1/spooled".getBytes(StandardCharsets.UTF_8)), spooledFile.getChecksum());
+
+            ModelGenerator.writeDirectory(ImmutableList.of(spooledFile), tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+            assertEquals("level1/spooled", Files.readAllLines(absolutePathFor("level1", "spooled")).get(0));
+        }
+    }
+
+    @Test
+    void testFilesWrittenWithIoExecutor() throws IOException {
+        ExecutorService ioExecutor = GeneratorExecutors.newBoundedIoExecutor(2);
+        try {
+            ModelGenerator.writeDirectory(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                    .generatedFiles(generatedFileCollecton)
+                    .targetDirectory(tmpTargetDir.toFile())
+                    .ioExecutor(ioExecutor)
+                    .build());
+
+            Collection<GeneratorFileEntry> entries = ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES);
+            assertThat(entries, equalTo(ModelGenerator.readFilesystemEntries(tmpTargetDir.toFile(), entries, ioExecutor)));
+
+            Files.write(absolutePathFor("level1", "file1"), "level1/file1Modified".getBytes(StandardCharsets.UTF_8));
+            assertThrows(IllegalStateException.class, () ->
+                    ModelGenerator.writeDirectory(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                            .generatedFiles(generatedFileCollecton)
+                            .targetDirectory(tmpTargetDir.toFile())
+                            .ioExecutor(Runnable::run)
+                            .build()));
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void testChecksumAlgorithmStored() throws IOException {
+        ModelGenerator.writeDirectory(ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(generatedFileCollecton)
+                .targetDirectory(tmpTargetDir.toFile())
+                .checksumAlgorithm(ChecksumAlgorithm.MURMUR3_128)
+                .build());
+
+        List<String> lines = Files.readAllLines(absolutePathFor(ModelGenerator.GENERATED_FILES));
+        assertEquals("# checksum: murmur3_128", lines.get(0));
+        assertEquals("level1/file1," + ChecksumUtil.getChecksum("level1/file1".getBytes(StandardCharsets.UTF_8), ChecksumAlgorithm.MURMUR3_128),
+                lines.get(1));
+
+        GeneratorManifest manifest = GeneratorManifest.read(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES);
+        assertEquals(ChecksumAlgorithm.MURMUR3_128, manifest.getChecksumAlgorithm());
+        assertThat(manifest.getEntries(), equalTo(ModelGenerator.readFilesystemEntries(tmpTargetDir.toFile(), manifest.getEntries(),
+                GeneratorExecutors.getDefaultIoExecutor(), ChecksumAlgorithm.MURMUR3_128)));
+
+        Files.write(absolutePathFor("level1", "file1"), "level1/file1Modified".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () ->
+                ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true));
+
+        absolutePathFor("level1", "file1").toFile().delete();
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+        assertThat(Files.readAllLines(absolutePathFor(ModelGenerator.GENERATED_FILES)).get(0), startsWith("level1/file1,"));
+    }
+
+    @Test
+    void testManifestPathStartingWithHash() {
+        GeneratorManifest manifest = GeneratorManifest.generatorManifest()
+                .checksumAlgorithm(ChecksumAlgorithm.MURMUR3_128)
+                .entries(ImmutableList.of(
+                        GeneratorFileEntry.generatorFileEntry().path("#checksum: md5").checksum("a").build(),
+                        GeneratorFileEntry.generatorFileEntry().path("# level1/file1").checksum("b").build()))
+                .build();
+
+        GeneratorManifest parsed = GeneratorManifest.parse(manifest.toLines());
+        assertEquals(ChecksumAlgorithm.MURMUR3_128, parsed.getChecksumAlgorithm());
+        assertThat(parsed.getEntries(), equalTo(manifest.getEntries()));
+    }
+
+    @Test
+    void testStatBasedValidation() throws IOException {
+        ModelGenerator.WriteDirectoryArgument args = ModelGenerator.WriteDirectoryArgument.writeDirectoryArgument()
+                .generatedFiles(generatedFileCollecton)
+                .targetDirectory(tmpTargetDir.toFile())
+                .statBasedValidation(true)
+                .build();
+        ModelGenerator.writeDirectory(args);
+        // Recently written files are not recorded
+        assertNull(ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES).iterator().next().getSize());
+
+        Path file1 = absolutePathFor("level1", "file1");
+        FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 3600000);
+        for (GeneratedFile generatedFile : generatedFileCollecton) {
+            Files.setLastModifiedTime(absolutePathFor(generatedFile.getPath()), modified);
+        }
+        ModelGenerator.writeDirectory(args);
+
+        GeneratorFileEntry entry = ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES).iterator().next();
+        assertEquals("level1/file1", entry.getPath());
+        assertEquals(Long.valueOf(12), entry.getSize());
+        assertEquals(Long.valueOf(modified.toMillis()), entry.getLastModified());
+        assertEquals(entry.toString(), GeneratorFileEntry.fromString(entry.toString()).toString());
+
+        // Same size and modification time, the file is not hashed
+        Files.write(file1, "level1/FILE1".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file1, modified);
+        ModelGenerator.writeDirectory(args);
+
+        Files.write(file1, "level1/FILE1".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () -> ModelGenerator.writeDirectory(args));
+    }
+
+    @Test
+    void testLargeFileChecksum() throws IOException {
+        byte[] content = new byte[ChecksumUtil.READ_BUFFER_SIZE * 3 + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Path file = tmpTargetDir.resolve("large");
+        Files.write(file, content);
+
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            assertEquals(ChecksumUtil.getChecksum(content, algorithm), ChecksumUtil.getChecksum(file, algorithm));
+        }
+        assertEquals(ChecksumUtil.getMD5(content), ChecksumUtil.getMD5(file));
+    }
+
+    @Test
+    void testFingerprintStored() {
+        generatedFileCollecton.forEach(f -> f.setFingerprint("fingerprint-" + f.getPath().replace('/', '-')));
+        ModelGenerator.writeDirectory(generatedFileCollecton, tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+
+        assertThrows(NullPointerException.class, () -> IncrementalGeneration.incrementalGeneration()
+                .targetDirectory(tmpTargetDir.toFile())
+                .build());
+        IncrementalGeneration incrementalGeneration = IncrementalGeneration.incrementalGeneration()
+                .targetDirectory(tmpTargetDir.toFile())
+                .valueFingerprint(String::valueOf)
+                .build();
+
+        GeneratedFile unchanged = GeneratedFile.builder().path("level1/file1").fingerprint("fingerprint-level1-file1").build();
+        GeneratedFile changed = GeneratedFile.builder().path("level1/file2").fingerprint("changed").build();
+
+        assertTrue(incrementalGeneration.reuseIfUnchanged(unchanged));
+        assertFalse(incrementalGeneration.reuseIfUnchanged(changed));
+        assertEquals(ChecksumUtil.getMD5("level1/file1".getBytes(StandardCharsets.UTF_8)), unchanged.getChecksum());
+
+        ModelGenerator.writeDirectory(ImmutableList.of(unchanged), tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES, true);
+        assertEquals(1, ModelGenerator.readGeneratedFiles(tmpTargetDir.toFile(), ModelGenerator.GENERATED_FILES).size());
+        assertTrue(absolutePathFor("level1", "file1").toFile().exists());
+    }
+
     Path absolutePathFor(String... relativePath) {
         return Paths.get(tmpTargetDir.toString(), relativePath);
     }
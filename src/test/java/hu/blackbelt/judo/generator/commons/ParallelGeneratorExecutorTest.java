@@ -0,0 +1,203 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelGeneratorExecutorTest {
+    static final String TMP_DIR_PREFIX = "parallelGeneratorExecutorTestTarget";
+    Path tmpTargetDir;
+    ModelGeneratorContext generatorContext;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpTargetDir = Files.createTempDirectory(Paths.get("target"), TMP_DIR_PREFIX).toAbsolutePath();
+        ChainedURLTemplateLoader templateLoader = ChainedURLTemplateLoader.createFromURIs(ImmutableList.of(tmpTargetDir.toUri()));
+
+        GeneratorModel generatorModel = GeneratorModel.generatorModelBuilder()
+                .templates(new HashSet<>(ImmutableList.of(
+                        GeneratorTemplate.generatorTemplateBuilder()
+                                .name("element")
+                                .factoryExpression("#root")
+                                .pathExpression("'elements/' + #self + '.txt'")
+                                .template("{{prefix}}-{{self}}")
+                                .actorTypeBased(false)
+                                .build(),
+                        GeneratorTemplate.generatorTemplateBuilder()
+                                .name("actor")
+                                .pathExpression("#actorType + '/actor.txt'")
+                                .template("{{actorType}}")
+                                .build())))
+                .build();
+
+        generatorContext = ModelGeneratorContext.builder()
+                .templateLoader(templateLoader)
+                .urlResolver(templateLoader)
+                .generatorModel(generatorModel)
+                .build();
+    }
+
+    @Test
+    void testParallelGeneration() {
+        List<String> elements = IntStream.range(0, 200).mapToObj(i -> "e" + i).collect(Collectors.toList());
+        GeneratorParameter<String> parameter = GeneratorParameter.<String>generatorParameter()
+                .generatorContext(generatorContext)
+                .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                .discriminatorTargetNameResolver(a -> a)
+                .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                .extraContextVariables(() -> ImmutableMap.of("prefix", "generated"))
+                .performExecutor(ParallelGeneratorExecutor.<String>parallelGeneratorExecutor()
+                        .model(() -> elements)
+                        .discriminators(() -> ImmutableList.of("actor1", "actor2"))
+                        .parallelism(4)
+                        .queueCapacity(8)
+                        .build())
+                .build();
+
+        GeneratorResult<String> result = parameter.getPerformExecutor().apply(parameter);
+
+        assertEquals(elements.stream().map(e -> "elements/" + e + ".txt").collect(Collectors.toList()),
+                result.getGenerated().stream().map(GeneratedFile::getPath).collect(Collectors.toList()));
+        assertEquals("generated-e42", new String(result.getGenerated().stream().skip(42).findFirst().get().getContent(), StandardCharsets.UTF_8));
+        assertEquals(ImmutableList.of("actor1", "actor2"), ImmutableList.copyOf(result.getGeneratedByDiscriminator().keySet()));
+        assertEquals("actor2", new String(result.getGeneratedByDiscriminator().get("actor2").iterator().next().getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFailurePropagated() {
+        GeneratorParameter<String> parameter = GeneratorParameter.<String>generatorParameter()
+                .generatorContext(generatorContext)
+                .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                .discriminatorTargetNameResolver(a -> a)
+                .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                .performExecutor(ParallelGeneratorExecutor.<String>parallelGeneratorExecutor()
+                        .model(() -> ImmutableList.of("e1"))
+                        .build())
+                .build();
+
+        generatorContext.getGeneratorModel().getTemplates().forEach(t -> t.setPathExpression("#undefined.length()"));
+
+        assertThrows(IllegalArgumentException.class, () -> parameter.getPerformExecutor().apply(parameter));
+    }
+
+    @Test
+    void testContextClassLoaderOfTasks() throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader originalClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader realmClassLoader = new URLClassLoader(new URL[0], originalClassLoader)) {
+            thread.setContextClassLoader(realmClassLoader);
+            GeneratorParameter<String> parameter = GeneratorParameter.<String>generatorParameter()
+                    .generatorContext(generatorContext)
+                    .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                    .discriminatorTargetNameResolver(a -> a)
+                    .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                    .extraContextVariables(() -> ImmutableMap.of("realm", realmClassLoader))
+                    .performExecutor(ParallelGeneratorExecutor.<String>parallelGeneratorExecutor()
+                            .model(() -> ImmutableList.of("e1", "e2"))
+                            .discriminators(() -> ImmutableList.of())
+                            .parallelism(2)
+                            .build())
+                    .build();
+
+            generatorContext.getGeneratorModel().getTemplates().forEach(t -> t.setPathExpression(
+                    "(T(java.lang.Thread).currentThread().getContextClassLoader() == #realm) + '/' + #self + '.txt'"));
+
+            GeneratorResult<String> result = parameter.getPerformExecutor().apply(parameter);
+
+            assertEquals(ImmutableList.of("true/e1.txt", "true/e2.txt"),
+                    result.getGenerated().stream().map(GeneratedFile::getPath).collect(Collectors.toList()));
+        } finally {
+            thread.setContextClassLoader(originalClassLoader);
+        }
+    }
+
+    @Test
+    void testSubmittedTasksFinishedWhenTemplateFails() throws Exception {
+        AtomicInteger evaluated = new AtomicInteger();
+        GeneratorParameter<String> parameter = GeneratorParameter.<String>generatorParameter()
+                .generatorContext(generatorContext)
+                .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                .discriminatorTargetNameResolver(a -> a)
+                .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                .extraContextVariables(() -> ImmutableMap.of("evaluated", evaluated))
+                .performExecutor(ParallelGeneratorExecutor.<String>parallelGeneratorExecutor()
+                        .model(() -> IntStream.range(0, 50).mapToObj(i -> "e" + i).collect(Collectors.toList()))
+                        .discriminators(() -> ImmutableList.of())
+                        .parallelism(2)
+                        .queueCapacity(100)
+                        .build())
+                .build();
+
+        generatorContext.getGeneratorModel().getTemplates().forEach(t -> t.setPathExpression(
+                "T(java.lang.Thread).sleep(5L) + #evaluated.incrementAndGet() + '.txt'"));
+        generatorContext.getGeneratorModel().getTemplates().add(GeneratorTemplate.generatorTemplateBuilder()
+                .name("failing")
+                .factoryExpression("#undefined.length()")
+                .pathExpression("#self")
+                .actorTypeBased(false)
+                .build());
+
+        assertThrows(RuntimeException.class, () -> parameter.getPerformExecutor().apply(parameter));
+        int evaluatedOnFailure = evaluated.get();
+        Thread.sleep(100);
+        assertEquals(evaluatedOnFailure, evaluated.get());
+    }
+
+    @Test
+    void testValueResolverChain() {
+        GeneratorParameter<String> parameter = GeneratorParameter.<String>generatorParameter()
+                .generatorContext(generatorContext)
+                .discriminatorTargetDirectoryResolver(a -> new File(tmpTargetDir.toFile(), a))
+                .discriminatorTargetNameResolver(a -> a)
+                .targetDirectoryResolver(() -> tmpTargetDir.toFile())
+                .extraContextVariables(() -> ImmutableMap.of("prefix", "generated"))
+                .performExecutor(ParallelGeneratorExecutor.<String>parallelGeneratorExecutor()
+                        .model(() -> ImmutableList.of("e1", "e2"))
+                        .discriminators(() -> ImmutableList.of("actor1"))
+                        .valueResolverChain(true)
+                        .build())
+                .build();
+
+        GeneratorResult<String> result = parameter.getPerformExecutor().apply(parameter);
+
+        assertEquals(ImmutableList.of("generated-e1", "generated-e2"), result.getGenerated().stream()
+                .map(f -> new String(f.getContent(), StandardCharsets.UTF_8)).collect(Collectors.toList()));
+        assertTrue(generatorContext.getValueResolverChain().getHitCounts().values().stream().mapToLong(Long::longValue).sum() > 0);
+    }
+}
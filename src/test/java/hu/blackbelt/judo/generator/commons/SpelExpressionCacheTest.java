@@ -0,0 +1,96 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import org.junit.jupiter.api.Test;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpelExpressionCacheTest {
+
+    @Test
+    void testExpressionsShared() {
+        SpelExpressionCache interpreted = new SpelExpressionCache(SpelCompilerMode.OFF, null);
+        Expression expression = interpreted.parseExpression("template1", "#self.length()");
+
+        assertSame(expression, interpreted.parseExpression("template2", "#self.length()"));
+        assertNotSame(expression, new SpelExpressionCache(SpelCompilerMode.OFF, null).parseExpression("template1", "#self.length()"));
+
+        SpelExpressionCache compiled = new SpelExpressionCache(SpelCompilerMode.IMMEDIATE, getClass().getClassLoader());
+        assertSame(compiled.parseExpression("template1", "#self.length()"), compiled.parseExpression("template1", "#self.length()"));
+        assertNotSame(compiled.parseExpression("template1", "#self.length()"), compiled.parseExpression("template2", "#self.length()"));
+    }
+
+    @Test
+    void testCompiledExpressionsNotSharedBetweenTemplates() {
+        SpelExpressionCache cache = new SpelExpressionCache(SpelCompilerMode.IMMEDIATE, getClass().getClassLoader());
+        StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("named", cache.parseExpression("template1", "name").getValue(evaluationContext, new Named("named")));
+        }
+        assertEquals("other", cache.parseExpression("template2", "name").getValue(evaluationContext, new OtherNamed("other")));
+    }
+
+    @Test
+    void testCompilationFallbacksReported() {
+        SpelExpressionCache cache = new SpelExpressionCache(SpelCompilerMode.MIXED, getClass().getClassLoader());
+        Expression compilable = cache.parseExpression(null, "'prefix-' + name");
+        Expression interpreted = cache.parseExpression(null, "{1, 2}.![#this * 2]");
+
+        StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("prefix-test", compilable.getValue(evaluationContext, new Named("test")));
+            assertEquals(Arrays.asList(2, 4), interpreted.getValue(evaluationContext));
+        }
+
+        assertEquals(Arrays.asList("{1, 2}.![#this * 2]"), cache.reportCompilationFallbacks());
+        assertTrue(new SpelExpressionCache(SpelCompilerMode.MIXED, null).reportCompilationFallbacks().isEmpty());
+    }
+
+    public static class OtherNamed {
+        private final String name;
+
+        public OtherNamed(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Named {
+        private final String name;
+
+        public Named(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
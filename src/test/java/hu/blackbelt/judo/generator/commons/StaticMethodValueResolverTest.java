@@ -0,0 +1,96 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.github.jknack.handlebars.ValueResolver;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StaticMethodValueResolverTest {
+
+    public static class TestHelper extends StaticMethodValueResolver {
+        public static String describe(Object object) {
+            return "object";
+        }
+
+        public static String describe(CharSequence text) {
+            return "text:" + text;
+        }
+
+        public static String describe(Collection<?> collection) {
+            return "collection:" + collection.size();
+        }
+
+        public static String constant() {
+            return "constant";
+        }
+
+        public static String failing(String text) {
+            throw new IllegalStateException(text);
+        }
+
+        public static String twoArguments(String text, String other) {
+            return text + other;
+        }
+    }
+
+    TestHelper resolver = new TestHelper();
+
+    @Test
+    void testMostSpecificMethodResolved() {
+        assertEquals("text:a", resolver.resolve("a", "describe"));
+        assertEquals("text:b", resolver.resolve(new StringBuilder("b"), "describe"));
+        assertEquals("collection:2", resolver.resolve(List.of(1, 2), "describe"));
+        assertEquals("collection:0", resolver.resolve(new ArrayList<>(), "describe"));
+        assertEquals("object", resolver.resolve(1, "describe"));
+        // Resolved from the cache
+        assertEquals("text:c", resolver.resolve("c", "describe"));
+    }
+
+    @Test
+    void testUnresolved() {
+        assertEquals("constant", resolver.resolve("a", "constant"));
+        assertEquals("constant", resolver.resolve(null, "constant"));
+        assertSame(ValueResolver.UNRESOLVED, resolver.resolve("a", "unknown"));
+        assertSame(ValueResolver.UNRESOLVED, resolver.resolve(1, "failing"));
+        assertSame(ValueResolver.UNRESOLVED, resolver.resolve("a", "twoArguments"));
+        assertThrows(IllegalStateException.class, () -> resolver.resolve("a", "failing"));
+    }
+
+    @Test
+    void testStatistics() {
+        resolver.resolve("a", "describe");
+        resolver.resolve("a", "unknown");
+        for (int i = 0; i < 3; i++) {
+            resolver.resolve(1, "failing");
+        }
+
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(4, resolver.getMissCount());
+        assertEquals(ImmutableMap.of("java.lang.Integer#failing", 3L), resolver.getMismatchCounts());
+    }
+}
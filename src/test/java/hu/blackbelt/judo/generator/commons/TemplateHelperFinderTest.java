@@ -0,0 +1,96 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import hu.blackbelt.judo.generator.commons.annotations.ContextAccessor;
+import hu.blackbelt.judo.generator.commons.annotations.TemplateHelper;
+import hu.blackbelt.judo.generator.commons.annotations.TemplateHelperIndexProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateHelperFinderTest {
+
+    static final List<String> PACKAGES = List.of("hu.blackbelt.judo.generator.commons");
+
+    @TemplateHelper
+    public static class TestTemplateHelper extends StaticMethodValueResolver {
+        public static String test() {
+            return "test";
+        }
+    }
+
+    @ContextAccessor
+    public static class TestContextAccessor {
+    }
+
+    @Test
+    void testIndex() throws IOException {
+        Collection<String> helpers = TemplateHelperFinder.collectHelpers(PACKAGES);
+        assertTrue(helpers.contains(StringHelper.class.getName()));
+        assertTrue(helpers.contains(TestTemplateHelper.class.getName()));
+        assertTrue(TemplateHelperFinder.collectHelpersAsClass(PACKAGES).contains(TestTemplateHelper.class));
+        assertEquals(TestContextAccessor.class, TemplateHelperFinder.findContextAccessorAsClass(PACKAGES).get());
+        assertTrue(TemplateHelperFinder.collectHelpers(List.of("hu.blackbelt.judo.generator.commons.annotations")).isEmpty());
+    }
+
+    @Test
+    void testScanWithoutIndex() throws IOException {
+        // The index is hidden, so the classpath is scanned
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                return name.startsWith("META-INF/judo-generator/") ? Collections.emptyEnumeration() : super.getResources(name);
+            }
+        };
+        assertEquals(TemplateHelperFinder.collectHelpers(PACKAGES),
+                TemplateHelperFinder.collectHelpers(PACKAGES, classLoader));
+        assertEquals(TestContextAccessor.class.getName(), TemplateHelperFinder.findContextAccessor(PACKAGES, classLoader).get());
+    }
+
+    @Test
+    void testIndexedAndScannedEntriesMerged() throws IOException {
+        // Only the index of the test classes is hidden, the index of the main classes is read
+        String testClassesRoot = TestTemplateHelper.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                List<URL> resources = Collections.list(super.getResources(name));
+                resources.removeIf(url -> name.startsWith("META-INF/judo-generator/") && url.toString().startsWith(testClassesRoot));
+                return Collections.enumeration(resources);
+            }
+        };
+        assertEquals(1, Collections.list(classLoader.getResources(TemplateHelperIndexProcessor.TEMPLATE_HELPERS_INDEX)).size());
+
+        Collection<String> helpers = TemplateHelperFinder.collectHelpers(PACKAGES, classLoader);
+        assertTrue(helpers.contains(StringHelper.class.getName()));
+        assertTrue(helpers.contains(TestTemplateHelper.class.getName()));
+        assertEquals(TemplateHelperFinder.collectHelpers(PACKAGES), helpers);
+        assertEquals(TestContextAccessor.class.getName(), TemplateHelperFinder.findContextAccessor(PACKAGES, classLoader).get());
+    }
+}
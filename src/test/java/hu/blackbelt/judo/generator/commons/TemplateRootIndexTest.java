@@ -0,0 +1,102 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class TemplateRootIndexTest {
+    static final String TMP_DIR_PREFIX = "templateRootIndexTestTarget";
+    Path tmpTargetDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpTargetDir = Files.createTempDirectory(Paths.get("target"), TMP_DIR_PREFIX).toAbsolutePath();
+        Files.createDirectories(tmpTargetDir.resolve("templates/level1"));
+        Files.write(tmpTargetDir.resolve("templates/level1/file1.hbs"), "file1".getBytes(StandardCharsets.UTF_8));
+        Files.write(tmpTargetDir.resolve("templates/empty.hbs"), new byte[0]);
+    }
+
+    @Test
+    void testDirectoryIndex() throws Exception {
+        URI root = tmpTargetDir.resolve("templates").toUri();
+        TemplateRootIndex index = TemplateRootIndex.load(root);
+
+        assertNotNull(index);
+        assertTrue(index.isPresent(root.resolve("level1/file1.hbs").toURL()));
+        assertFalse(index.isPresent(root.resolve("level1/file2.hbs").toURL()));
+        assertFalse(index.isPresent(root.resolve("empty.hbs").toURL()));
+        assertNull(index.isPresent(tmpTargetDir.toUri().resolve("other.hbs").toURL()));
+    }
+
+    @Test
+    void testJarIndex() throws Exception {
+        Path jar = tmpTargetDir.resolve("templates.jar");
+        writeJar(jar, "templates/level1/file1.hbs", "templates/level1/file2.hbs");
+
+        URI root = new URI("jar:" + jar.toUri() + "!/templates/");
+        TemplateRootIndex index = TemplateRootIndex.load(root);
+
+        assertNotNull(index);
+        assertTrue(index.isPresent(new URI(root + "level1/file1.hbs").toURL()));
+        assertFalse(index.isPresent(new URI(root + "level1/file3.hbs").toURL()));
+    }
+
+    @Test
+    void testIndexFileInJar() throws Exception {
+        TemplateRootIndex.writeIndexFile(tmpTargetDir.resolve("templates"));
+        assertEquals("level1/file1.hbs", Files.readAllLines(tmpTargetDir.resolve("templates").resolve(TemplateRootIndex.INDEX_FILE)).get(0));
+
+        Path jar = tmpTargetDir.resolve("indexed.jar");
+        writeJar(jar, "templates/" + TemplateRootIndex.INDEX_FILE);
+
+        TemplateRootIndex index = TemplateRootIndex.load(new URI("jar:" + jar.toUri() + "!/templates/"));
+
+        assertNotNull(index);
+        assertEquals(1, index.getEntries().size());
+        assertTrue(index.getEntries().contains("level1/file1.hbs"));
+    }
+
+    void writeJar(Path jar, String... entries) throws IOException {
+        try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar.toFile()))) {
+            for (String entry : entries) {
+                jarOutputStream.putNextEntry(new JarEntry(entry));
+                jarOutputStream.write(Files.readAllBytes(tmpTargetDir.resolve(entry.startsWith("templates/" + TemplateRootIndex.INDEX_FILE)
+                        ? entry : "templates/level1/file1.hbs")));
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+}
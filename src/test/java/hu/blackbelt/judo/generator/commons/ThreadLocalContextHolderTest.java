@@ -0,0 +1,99 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThreadLocalContextHolderTest {
+
+    static final AtomicInteger CONVERSIONS = new AtomicInteger();
+
+    static final ContextVariable<Boolean> FLAG = ContextVariable.of("flag", v -> {
+        CONVERSIONS.incrementAndGet();
+        return Boolean.parseBoolean((String) v);
+    });
+
+    static final ContextVariable<String> PREFIX = ContextVariable.of("prefix", String.class);
+
+    @Test
+    void testBinding() {
+        assertThrows(IllegalStateException.class, PREFIX::get);
+
+        try (ThreadLocalContextHolder.Binding outer = ThreadLocalContextHolder.bind(ImmutableMap.of("prefix", "outer", "flag", "true"))) {
+            assertEquals("outer", PREFIX.get());
+            try (ThreadLocalContextHolder.Binding inner = ThreadLocalContextHolder.bind(ImmutableMap.of("prefix", "inner"))) {
+                assertEquals("inner", ThreadLocalContextHolder.getVariable("prefix"));
+                assertFalse(FLAG.get());
+            }
+            assertEquals("outer", PREFIX.get());
+            assertEquals("outer", ThreadLocalContextHolder.getContext().get("prefix"));
+        }
+
+        assertNull(ThreadLocalContextHolder.getContext());
+        assertThrows(IllegalStateException.class, () -> ThreadLocalContextHolder.getVariable("prefix"));
+    }
+
+    @Test
+    void testVariableConvertedOncePerBinding() {
+        CONVERSIONS.set(0);
+        try (ThreadLocalContextHolder.Binding binding = ThreadLocalContextHolder.bind(ImmutableMap.of("flag", "true"))) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(FLAG.get());
+            }
+        }
+        assertEquals(1, CONVERSIONS.get());
+    }
+
+    @Test
+    void testVariablesWithSameNameShareSlot() {
+        ContextVariable<Object> raw = ContextVariable.of("flag");
+        assertEquals(FLAG.getSlot(), raw.getSlot());
+        assertEquals(FLAG.getSlot(), ContextVariable.of("flag", String.class).getSlot());
+
+        try (ThreadLocalContextHolder.Binding binding = ThreadLocalContextHolder.bind(ImmutableMap.of("flag", "true"))) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(Boolean.TRUE, FLAG.get());
+                assertEquals("true", raw.get());
+                assertEquals("true", ContextVariable.of("flag", String.class).get());
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testDeprecatedContextLocal() {
+        ThreadLocalContextHolder.getContextLocal().set(ImmutableMap.of("prefix", "first"));
+        try {
+            assertEquals("first", PREFIX.get());
+            ThreadLocalContextHolder.getContextLocal().set(ImmutableMap.of("prefix", "second"));
+            assertEquals("second", PREFIX.get());
+            assertEquals("second", ThreadLocalContextHolder.getContext().get("prefix"));
+        } finally {
+            ThreadLocalContextHolder.getContextLocal().remove();
+        }
+        assertNull(ThreadLocalContextHolder.getContext());
+    }
+}
@@ -0,0 +1,91 @@
+package hu.blackbelt.judo.generator.commons;
+
+/*-
+ * #%L
+ * JUDO Generator commons
+ * %%
+ * Copyright (C) 2018 - 2023 BlackBelt Technology
+ * %%
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ * 
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 2
+ * with the GNU Classpath Exception which is
+ * available at https://www.gnu.org/software/classpath/license.html.
+ * 
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ * #L%
+ */
+
+import com.github.jknack.handlebars.ValueResolver;
+import com.github.jknack.handlebars.context.JavaBeanValueResolver;
+import com.github.jknack.handlebars.context.MapValueResolver;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueResolverChainTest {
+
+    @Test
+    void testResolvedLikeThePlainChain() {
+        List<ValueResolver> resolvers = ImmutableList.<ValueResolver>builder()
+                .addAll(ValueResolver.defaultValueResolvers())
+                .add(new StringHelper())
+                .build();
+        ValueResolverChain chain = ValueResolverChain.of(resolvers);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Abc", chain.resolve("abc", "firstToUpperCase"));
+            assertEquals("abc", chain.resolve("ABC", "lowerCase"));
+            assertEquals(3, chain.resolve("abc", "length"));
+            assertEquals(ValueResolver.UNRESOLVED, chain.resolve("abc", "unknown"));
+            // The map resolver hits first, then the method resolver for the same class and name
+            assertEquals("custom", chain.resolve(new HashMap<>(ImmutableMap.of("size", "custom")), "size"));
+            assertEquals(0, chain.resolve(new HashMap<>(), "size"));
+        }
+
+        assertEquals(3L, chain.getMissCount());
+        assertEquals(6L, chain.getHitCounts().get(StringHelper.class.getName()));
+        assertEquals(3L, chain.getHitCounts().get(MapValueResolver.class.getName()));
+    }
+
+    public static class EvenHelper extends StaticMethodValueResolver {
+        @Override
+        public Object resolve(Object context, String name) {
+            if ("even".equals(name) && context instanceof Integer && (Integer) context % 2 == 0) {
+                return true;
+            }
+            return super.resolve(context, name);
+        }
+    }
+
+    @Test
+    void testValueDependentResolversNotSkipped() {
+        EvenHelper evenHelper = new EvenHelper();
+        assertFalse(evenHelper.isClassDetermined());
+        assertTrue(new StringHelper().isClassDetermined());
+
+        ValueResolverChain chain = ValueResolverChain.of(ImmutableList.of(
+                // An open subclass of a built-in resolver is not trusted either
+                new JavaBeanValueResolver() {
+                    @Override
+                    public Object resolve(Object context) {
+                        return super.resolve(context);
+                    }
+                },
+                evenHelper));
+
+        assertEquals(ValueResolver.UNRESOLVED, chain.resolve(1, "even"));
+        assertEquals(true, chain.resolve(2, "even"));
+        assertEquals(ValueResolver.UNRESOLVED, chain.resolve(3, "even"));
+        assertEquals(true, chain.resolve(4, "even"));
+    }
+}